@@ -0,0 +1,294 @@
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.function.Consumer;
+import java.util.function.ObjIntConsumer;
+import java.util.function.IntConsumer;
+
+/**
+ * An ItemStore that keeps the weights of its Items in one int[] column and
+ * their names as ids of a NameDictionary in a second int[] column. No Item
+ * objects are kept; they are created only when they are asked for (e.g., by
+ * iteration or greatest()). Scans by weight only touch the weight column.
+ *
+ * A stored Item takes 8 bytes, compared to a reference plus an Item object
+ * for ListItemStore. The NameDictionary belongs to this store alone; it is
+ * cleared with the store and rebuilt when most of its names are no longer
+ * used, so it does not keep the names of all Items ever added.
+ *
+ * @author sobia
+ */
+class ColumnarItemStore implements ItemStore {
+
+    /** The least capacity the columns grow to when they are full. */
+    private static final int MIN_GROWTH = 16;
+
+    /**
+     * The greatest capacity of the columns; some JVMs cannot allocate
+     * arrays that are slightly shorter than Integer.MAX_VALUE.
+     */
+    static final int MAX_CAPACITY = Integer.MAX_VALUE - 8;
+
+    private NameDictionary names;
+
+    private int[] weights;
+
+    private int[] nameIds;
+
+    private int size;
+
+    /**
+     * Constructs a new ColumnarItemStore without any Items and with its own
+     * NameDictionary.
+     *
+     * @param capacity the number of Items that can be stored before the
+     *  columns have to grow; must not be negative
+     */
+    ColumnarItemStore(int capacity) {
+        this(new NameDictionary(), capacity);
+    }
+
+    /**
+     * Constructs a new ColumnarItemStore without any Items.
+     *
+     * @param names the dictionary for the names of the Items, which must
+     *  not be used by any other store; must not be null
+     * @param capacity the number of Items that can be stored before the
+     *  columns have to grow; must not be negative
+     */
+    ColumnarItemStore(NameDictionary names, int capacity) {
+        this.names = names;
+        this.weights = new int[capacity];
+        this.nameIds = new int[capacity];
+    }
+
+    @Override
+    public int size() {
+        return this.size;
+    }
+
+    @Override
+    public void add(Item item) {
+        add(item.getWeightInGrammes(), this.names.idOf(item.getName()));
+    }
+
+    /**
+     * Adds an Item given by its weight and the id of its name.
+     *
+     * @param weightInGrammes the weight of the Item; must be positive
+     * @param nameId the id of the name of the Item in the NameDictionary of
+     *  this ColumnarItemStore
+     */
+    void add(int weightInGrammes, int nameId) {
+        if (this.size == this.weights.length) {
+            // doubling up to MAX_CAPACITY in long arithmetic, so that it
+            // does not overflow; beyond that, ensureCapacity fails
+            long doubled = Math.min(MAX_CAPACITY, Math.max(MIN_GROWTH, 2L * this.size));
+            ensureCapacity((int) Math.max(this.size + 1L, doubled));
+        }
+        this.weights[this.size] = weightInGrammes;
+        this.nameIds[this.size] = nameId;
+        this.size++;
+    }
+
+    @Override
+    public int capacity() {
+        return this.weights.length;
+    }
+
+    @Override
+    public void ensureCapacity(int minCapacity) {
+        if (minCapacity > this.weights.length) {
+            if (minCapacity > MAX_CAPACITY) {
+                throw new IllegalStateException("ColumnarItemStore cannot hold more than "
+                    + MAX_CAPACITY + " Items");
+            }
+            this.weights = Arrays.copyOf(this.weights, minCapacity);
+            this.nameIds = Arrays.copyOf(this.nameIds, minCapacity);
+        }
+    }
+
+    @Override
+    public boolean addAppends() {
+        return true;
+    }
+
+    @Override
+    public void clear() {
+        this.size = 0;
+        this.names.clear();
+    }
+
+    @Override
+    public void removeHeavierThan(int maxItemWeightInGrammes, ObjIntConsumer<? super Item> removed) {
+        int kept = 0;
+        for (int i = 0; i < this.size; i++) {
+            if (this.weights[i] <= maxItemWeightInGrammes) {
+                this.weights[kept] = this.weights[i];
+                this.nameIds[kept] = this.nameIds[i];
+                kept++;
+            } else {
+                removed.accept(itemAt(i), 1);
+            }
+        }
+        this.size = kept;
+        forgetUnusedNames();
+    }
+
+    @Override
+    public void removeWeightsHeavierThan(int maxItemWeightInGrammes, RemovedWeights removed) {
+        int kept = 0;
+        for (int i = 0; i < this.size; i++) {
+            if (this.weights[i] <= maxItemWeightInGrammes) {
+                this.weights[kept] = this.weights[i];
+                this.nameIds[kept] = this.nameIds[i];
+                kept++;
+            } else {
+                removed.accept(this.weights[i], 1);
+            }
+        }
+        this.size = kept;
+        forgetUnusedNames();
+    }
+
+    @Override
+    public void removeNamed(String name, ObjIntConsumer<? super Item> removed) {
+        int id = this.names.find(name);
+        if (id < 0) {
+            return;
+        }
+        int kept = 0;
+        for (int i = 0; i < this.size; i++) {
+            if (this.nameIds[i] != id) {
+                this.weights[kept] = this.weights[i];
+                this.nameIds[kept] = this.nameIds[i];
+                kept++;
+            } else {
+                removed.accept(itemAt(i), 1);
+            }
+        }
+        this.size = kept;
+        forgetUnusedNames();
+    }
+
+    /**
+     * Rebuilds the NameDictionary with only the names that are still used
+     * if it has many more names than there are Items. This takes time
+     * linear in the number of Items, which happens at most once for every
+     * few Items removed.
+     */
+    private void forgetUnusedNames() {
+        if (this.names.size() <= 2 * this.size + MIN_GROWTH) {
+            return;
+        }
+        NameDictionary used = new NameDictionary();
+        int[] translated = new int[this.names.size()];
+        for (int i = 0; i < this.size; i++) {
+            this.nameIds[i] = this.names.translate(this.nameIds[i], used, translated);
+        }
+        this.names = used;
+    }
+
+    @Override
+    public boolean containsName(String name) {
+        int id = this.names.find(name);
+        if (id < 0) {
+            return false;
+        }
+        for (int i = 0; i < this.size; i++) {
+            if (this.nameIds[i] == id) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public ItemStore copyWith(int maxItemWeightInGrammes) {
+        int count = 0;
+        for (int i = 0; i < this.size; i++) {
+            if (this.weights[i] <= maxItemWeightInGrammes) {
+                count++;
+            }
+        }
+        ColumnarItemStore result = new ColumnarItemStore(count);
+        int[] translated = new int[this.names.size()];
+        for (int i = 0; i < this.size; i++) {
+            if (this.weights[i] <= maxItemWeightInGrammes) {
+                result.weights[result.size] = this.weights[i];
+                result.nameIds[result.size] = this.names.translate(this.nameIds[i], result.names, translated);
+                result.size++;
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public ItemStore emptyCopy(int capacity) {
+        return new ColumnarItemStore(capacity);
+    }
+
+    @Override
+    public long totalWeight() {
+        long sum = 0;
+        for (int i = 0; i < this.size; i++) {
+            sum += this.weights[i];
+        }
+        return sum;
+    }
+
+    @Override
+    public Item greatest() {
+        if (this.size == 0) {
+            return null;
+        }
+        int best = 0;
+        for (int i = 1; i < this.size; i++) {
+            if (this.weights[i] > this.weights[best]
+                    || this.weights[i] == this.weights[best]
+                       && this.names.nameOf(this.nameIds[i])
+                              .compareTo(this.names.nameOf(this.nameIds[best])) > 0) {
+                best = i;
+            }
+        }
+        return itemAt(best);
+    }
+
+    @Override
+    public void forEachWeight(IntConsumer action) {
+        for (int i = 0; i < this.size; i++) {
+            action.accept(this.weights[i]);
+        }
+    }
+
+    @Override
+    public Iterator<Item> iterator() {
+        return new Iterator<Item>() {
+            private int next = 0;
+
+            @Override
+            public boolean hasNext() {
+                return this.next < ColumnarItemStore.this.size;
+            }
+
+            @Override
+            public Item next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return itemAt(this.next++);
+            }
+        };
+    }
+
+    /**
+     * Returns the Item stored at position i, which is taken from the cache
+     * of Item.of if possible.
+     *
+     * @param i a position less than size
+     * @return an Item with the name and weight stored at position i
+     */
+    private Item itemAt(int i) {
+        return Item.of(this.names.nameOf(this.nameIds[i]), this.weights[i]);
+    }
+}
@@ -0,0 +1,289 @@
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A ConcurrentSmartshelf holds zero or more Items like a Smartshelf, but its
+ * methods may be called by many threads at the same time. It is meant for
+ * workloads where many threads add Items concurrently.
+ *
+ * The Items are spread over several stripes, each of which is a Smartshelf
+ * with its own lock. Adding an Item locks only the stripe of the calling
+ * thread, so threads adding Items rarely wait for each other and throughput
+ * grows with the number of cores. The total weight and the number of Items
+ * are counted in LongAdders and can be read without any locking; they are
+ * exact whenever no modification is in progress.
+ *
+ * toString(), greatestItem(), makeNewSmartshelfWith(int) and snapshot() lock
+ * all stripes and so see a consistent snapshot: every add that has returned
+ * before the call is included, and no add is seen partially.
+ *
+ * @author sobia
+ */
+public class ConcurrentSmartshelf {
+
+    private final Smartshelf[] stripes;
+
+    /** locks[i] guards stripes[i]. */
+    private final ReentrantLock[] locks;
+
+    private final LongAdder totalWeightInGrammes = new LongAdder();
+
+    private final LongAdder numberOfItems = new LongAdder();
+
+    /* Constructors */
+
+    /**
+     * Constructs a new ConcurrentSmartshelf without any Items.
+     */
+    public ConcurrentSmartshelf() {
+        this(StorageMode.LIST);
+    }
+
+    /**
+     * Constructs a new ConcurrentSmartshelf without any Items whose stripes
+     * store their Items as specified by mode.
+     *
+     * @param mode how the Items are stored; must not be null
+     */
+    public ConcurrentSmartshelf(StorageMode mode) {
+        // a power of two with a few stripes per core keeps collisions rare
+        int n = Integer.highestOneBit(4 * Runtime.getRuntime().availableProcessors() - 1) << 1;
+        this.stripes = new Smartshelf[n];
+        this.locks = new ReentrantLock[n];
+        for (int i = 0; i < n; i++) {
+            this.stripes[i] = new Smartshelf(mode);
+            this.locks[i] = new ReentrantLock();
+        }
+    }
+
+    /* Modifiers */
+
+    /**
+     * Adds an Item e to this ConcurrentSmartshelf if e is not null; does not
+     * modify this ConcurrentSmartshelf otherwise.
+     *
+     * @param e an item to be added to this ConcurrentSmartshelf
+     * @return true if e is not null, false otherwise
+     */
+    public boolean add(Item e) {
+        if (e == null) {
+            return false;
+        }
+        int i = stripeOfCurrentThread();
+        this.locks[i].lock();
+        try {
+            this.stripes[i].add(e);
+        } finally {
+            this.locks[i].unlock();
+        }
+        this.totalWeightInGrammes.add(e.getWeightInGrammes());
+        this.numberOfItems.increment();
+        return true;
+    }
+
+    /**
+     * Adds all non-null Items in items to this ConcurrentSmartshelf. The
+     * Items are added under a single lock acquisition.
+     *
+     * @param items contains the Item objects to be added to this
+     *  ConcurrentSmartshelf; must not be null (but may contain null)
+     * @return true if at least one element of items is non-null;
+     *  false otherwise
+     */
+    public boolean addAll(Item[] items) {
+        long weight = 0;
+        int count = 0;
+        int i = stripeOfCurrentThread();
+        this.locks[i].lock();
+        try {
+            for (Item it : items) {
+                if (it != null) {
+                    this.stripes[i].add(it);
+                    weight += it.getWeightInGrammes();
+                    count++;
+                }
+            }
+        } finally {
+            this.locks[i].unlock();
+        }
+        this.totalWeightInGrammes.add(weight);
+        this.numberOfItems.add(count);
+        return count > 0;
+    }
+
+    /**
+     * Empties this ConcurrentSmartshelf to one that contains 0 Items.
+     */
+    public void empty() {
+        lockAll();
+        try {
+            for (Smartshelf stripe : this.stripes) {
+                this.totalWeightInGrammes.add(-stripe.totalWeightInGrammesAsLong());
+                this.numberOfItems.add(-stripe.numberOfItems());
+                stripe.empty();
+            }
+        } finally {
+            unlockAll();
+        }
+    }
+
+    /**
+     * Removes certain Items from this ConcurrentSmartshelf. Exactly those
+     * Items are kept whose weight in grammes is less than or equal to the
+     * specified maximum weight in grammes.
+     *
+     * @param maxItemWeightInGrammes the maximum weight in grammes for the
+     *  Items that are kept
+     */
+    public void keepOnlyItemsWith(int maxItemWeightInGrammes) {
+        lockAll();
+        try {
+            for (Smartshelf stripe : this.stripes) {
+                long weightBefore = stripe.totalWeightInGrammesAsLong();
+                int countBefore = stripe.numberOfItems();
+                stripe.keepOnlyItemsWith(maxItemWeightInGrammes);
+                this.totalWeightInGrammes.add(stripe.totalWeightInGrammesAsLong() - weightBefore);
+                this.numberOfItems.add(stripe.numberOfItems() - countBefore);
+            }
+        } finally {
+            unlockAll();
+        }
+    }
+
+    /* Accessors */
+
+    /**
+     * Returns the number of Items in this ConcurrentSmartshelf. Does not
+     * lock; see the class comment.
+     *
+     * @return the number of Items in this ConcurrentSmartshelf
+     */
+    public int numberOfItems() {
+        return this.numberOfItems.intValue();
+    }
+
+    /**
+     * Returns the total weight of the Items in this ConcurrentSmartshelf.
+     * Does not lock; see the class comment.
+     *
+     * @return the total weight of the Items in this ConcurrentSmartshelf
+     */
+    public long totalWeightInGrammes() {
+        return this.totalWeightInGrammes.sum();
+    }
+
+    /**
+     * Returns the average weight in grammes of the Items in this
+     * ConcurrentSmartshelf; -1.0 if there is no Item.
+     *
+     * @return the average weight of the Items, or -1.0 if there is no Item
+     */
+    public double averageWeightInGrammes() {
+        lockAll();
+        try {
+            long weight = 0;
+            long count = 0;
+            for (Smartshelf stripe : this.stripes) {
+                weight += stripe.totalWeightInGrammesAsLong();
+                count += stripe.numberOfItems();
+            }
+            return count == 0 ? -1.0 : weight / (double) count;
+        } finally {
+            unlockAll();
+        }
+    }
+
+    /**
+     * Returns the greatest Item in this ConcurrentSmartshelf according to
+     * the natural ordering of Item; null if there is no Item.
+     *
+     * @return the greatest Item, or null if there is no Item
+     */
+    public Item greatestItem() {
+        lockAll();
+        try {
+            Item result = null;
+            for (Smartshelf stripe : this.stripes) {
+                Item it = stripe.greatestItem();
+                if (it != null && (result == null || it.compareTo(result) > 0)) {
+                    result = it;
+                }
+            }
+            return result;
+        } finally {
+            unlockAll();
+        }
+    }
+
+    /**
+     * Returns a new (single-threaded) Smartshelf with exactly those Items of
+     * this ConcurrentSmartshelf whose weight is less than or equal to the
+     * specified method parameter.
+     *
+     * @param maxItemWeightInGrammes the maximum weight in grammes for the
+     *  Items in the new Smartshelf
+     * @return a new Smartshelf with the matching Items
+     */
+    public Smartshelf makeNewSmartshelfWith(int maxItemWeightInGrammes) {
+        Smartshelf result = new Smartshelf();
+        lockAll();
+        try {
+            for (Smartshelf stripe : this.stripes) {
+                stripe.forEachItem(it -> {
+                    if (it.getWeightInGrammes() <= maxItemWeightInGrammes) {
+                        result.add(it);
+                    }
+                });
+            }
+        } finally {
+            unlockAll();
+        }
+        return result;
+    }
+
+    /**
+     * Returns a new (single-threaded) Smartshelf with all Items of this
+     * ConcurrentSmartshelf.
+     *
+     * @return a new Smartshelf with all Items
+     */
+    public Smartshelf snapshot() {
+        return makeNewSmartshelfWith(Integer.MAX_VALUE);
+    }
+
+    /**
+     * Returns a string representation of this ConcurrentSmartshelf in the
+     * format of Smartshelf.toString().
+     *
+     * @return a String representation of this ConcurrentSmartshelf
+     */
+    @Override
+    public String toString() {
+        return snapshot().toString();
+    }
+
+    /* Helpers */
+
+    /**
+     * Returns the index of the stripe used by the current thread.
+     *
+     * @return an index into stripes
+     */
+    private int stripeOfCurrentThread() {
+        // Fibonacci hashing spreads consecutive thread ids over the stripes
+        long h = Thread.currentThread().getId() * 0x9E3779B97F4A7C15L;
+        return (int) (h >>> 32) & (this.stripes.length - 1);
+    }
+
+    private void lockAll() {
+        for (ReentrantLock lock : this.locks) {
+            lock.lock();
+        }
+    }
+
+    private void unlockAll() {
+        for (int i = this.locks.length - 1; i >= 0; i--) {
+            this.locks[i].unlock();
+        }
+    }
+}
@@ -0,0 +1,46 @@
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * An Iterator over the Items of a map from Items to the number of times they
+ * are stored, returning every Item as often as its count says.
+ *
+ * @author sobia
+ */
+class CountingIterator implements Iterator<Item> {
+
+    private final Iterator<Map.Entry<Item, Integer>> entries;
+
+    private Item current;
+
+    private int remaining;
+
+    /**
+     * Constructs a new CountingIterator over the given counts.
+     *
+     * @param counts maps Items to their positive counts; must not be null
+     */
+    CountingIterator(Map<Item, Integer> counts) {
+        this.entries = counts.entrySet().iterator();
+    }
+
+    @Override
+    public boolean hasNext() {
+        return this.remaining > 0 || this.entries.hasNext();
+    }
+
+    @Override
+    public Item next() {
+        if (this.remaining == 0) {
+            if (!this.entries.hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Map.Entry<Item, Integer> e = this.entries.next();
+            this.current = e.getKey();
+            this.remaining = e.getValue();
+        }
+        this.remaining--;
+        return this.current;
+    }
+}
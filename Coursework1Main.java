@@ -1,4 +1,19 @@
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
 
 /**
  * Driver class for the Smartshelf class of Coursework Re-assessment
@@ -240,6 +255,71 @@ public class Coursework1Main {
         return k;
     }
 
+    /**
+     * @return a Smartshelf with storage mode mode on which the
+     *  keepOnlyItemsWith() mutator has been called to remove some items
+     */
+    private static Smartshelf makeKeepSmartshelf(StorageMode mode) {
+        Item[] items = { ITEM3, null, ITEM4, ITEM5, ITEM6, ITEM7, ITEM8, null, null, ITEM8  };
+        Smartshelf k = new Smartshelf(mode);
+        k.addAll(items);
+        k.add(ITEM2);
+        k.keepOnlyItemsWith(400);
+        return k;
+    }
+
+    /**
+     * @return a ConcurrentSmartshelf to which four threads have each added
+     *  ITEM1 and ITEM2 1000 times
+     */
+    private static ConcurrentSmartshelf makeConcurrentSmartshelf() {
+        ConcurrentSmartshelf k = new ConcurrentSmartshelf();
+        Thread[] threads = new Thread[4];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(() -> {
+                for (int j = 0; j < 1000; j++) {
+                    k.add(ITEM1);
+                    k.add(ITEM2);
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread t : threads) {
+            try {
+                t.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return k;
+    }
+
+    /**
+     * @return an array with enough Smartshelfs for heaviestSmartshelf to
+     *  work in parallel; the one with index 1234 has ITEM3 and ITEM7, the
+     *  others are null, empty or have ITEM3
+     */
+    private static Smartshelf[] makeManySmartshelfs() {
+        Smartshelf[] result = new Smartshelf[2 * Smartshelf.PARALLEL_THRESHOLD];
+        for (int i = 0; i < result.length; i++) {
+            if (i % 3 == 1) {
+                result[i] = new Smartshelf();
+            } else if (i % 3 == 2) {
+                result[i] = new Smartshelf(new Item[] { ITEM3 });
+            }
+        }
+        result[1234] = new Smartshelf(new Item[] { ITEM3, ITEM7 });
+        return result;
+    }
+
+    /**
+     * @return a Smartshelf whose total weight does not fit into an int
+     */
+    private static Smartshelf makeHeavySmartshelf() {
+        Item heavy = new Item("Anvil", Integer.MAX_VALUE);
+        return new Smartshelf(new Item[] { heavy, ITEM1, heavy });
+    }
+
     /**
      * @return an array with two Smartshelfs: the first one has ITEM1, ITEM2,
      *  and the second one has ITEM3
@@ -249,6 +329,54 @@ public class Coursework1Main {
                                 new Smartshelf(new Item[] { ITEM3 })};
     }
 
+    /**
+     * Deletes a directory together with the files in it.
+     *
+     * @param dir a directory without subdirectories
+     * @throws IOException if a file cannot be deleted
+     */
+    private static void deleteDirectory(Path dir) throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir)) {
+            for (Path file : files) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(dir);
+    }
+
+    /**
+     * Subscribes to publisher and collects everything it publishes.
+     *
+     * @param publisher the publisher to subscribe to
+     * @param completed counted down when publisher completes
+     * @return the list that the published items are added to
+     */
+    private static <T> List<T> collect(Flow.Publisher<T> publisher, CountDownLatch completed) {
+        List<T> result = Collections.synchronizedList(new ArrayList<>());
+        publisher.subscribe(new Flow.Subscriber<T>() {
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                subscription.request(Long.MAX_VALUE);
+            }
+
+            @Override
+            public void onNext(T item) {
+                result.add(item);
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                completed.countDown();
+            }
+
+            @Override
+            public void onComplete() {
+                completed.countDown();
+            }
+        });
+        return result;
+    }
+
     /**
      * Main method that drives the tests.
      *
@@ -399,6 +527,481 @@ public class Coursework1Main {
         Smartshelf[] sacks = makeTwoSmartshelfs();
         testIntEqual("heaviestSmartshelf", 1000, Smartshelf.heaviestSmartshelf(sacks).totalWeightInGrammes());
 
+        sack = makeHeavySmartshelf();
+        testLongEqual("totalWeightInGrammesAsLong", 2L * Integer.MAX_VALUE + 35,
+            sack.totalWeightInGrammesAsLong());
+        sack = makeHeavySmartshelf();
+        sack.keepOnlyItemsWith(1000);
+        testObjectEqual("greatestItem", ITEM1, sack.greatestItem());
+
+        sack = makeKeepSmartshelf(StorageMode.COLUMNAR);
+        testObjectEqual("greatestItem", ITEM4, sack.greatestItem());
+        sack = makeKeepSmartshelf(StorageMode.COLUMNAR);
+        testIntEqual("numberOfItems", 6, sack.numberOfItems());
+        sack = makeKeepSmartshelf(StorageMode.COLUMNAR);
+        testIntEqual("makeNewSmartshelfWith", 3, sack.makeNewSmartshelfWith(120).numberOfItems());
+        sack = makeKeepSmartshelf(StorageMode.COLUMNAR);
+        testIntEqual("totalWeightInGrammes", 1455, sack.totalWeightInGrammes());
+        sack = makeKeepSmartshelf(StorageMode.COLUMNAR);
+        testObjectEqual("toString", "[" + ITEM4 + ", " + ITEM5 + ", " + ITEM6 + ", "
+            + ITEM8 + ", " + ITEM8 + ", " + ITEM2 + "]", sack.toString());
+
+        sack = makeKeepSmartshelf(StorageMode.SORTED);
+        testObjectEqual("greatestItem", ITEM4, sack.greatestItem());
+        sack = makeKeepSmartshelf(StorageMode.SORTED);
+        testIntEqual("numberOfItems", 6, sack.numberOfItems());
+        sack = makeKeepSmartshelf(StorageMode.SORTED);
+        testIntEqual("makeNewSmartshelfWith", 3, sack.makeNewSmartshelfWith(120).numberOfItems());
+        sack = makeKeepSmartshelf(StorageMode.SORTED);
+        testIntEqual("totalWeightInGrammes", 1455, sack.totalWeightInGrammes());
+        sack = makeKeepSmartshelf(StorageMode.SORTED);
+        testObjectEqual("toString", "[" + ITEM2 + ", " + ITEM8 + ", " + ITEM8 + ", "
+            + ITEM5 + ", " + ITEM6 + ", " + ITEM4 + "]", sack.toString());
+
+        sack = makeKeepSmartshelf(StorageMode.MULTISET);
+        testObjectEqual("greatestItem", ITEM4, sack.greatestItem());
+        sack = makeKeepSmartshelf(StorageMode.MULTISET);
+        testIntEqual("numberOfItems", 6, sack.numberOfItems());
+        sack = makeKeepSmartshelf(StorageMode.MULTISET);
+        testIntEqual("makeNewSmartshelfWith", 3, sack.makeNewSmartshelfWith(120).numberOfItems());
+        sack = makeKeepSmartshelf(StorageMode.MULTISET);
+        testIntEqual("totalWeightInGrammes", 1455, sack.totalWeightInGrammes());
+        sack = makeKeepSmartshelf(StorageMode.MULTISET);
+        testIntEqual("toString", makeKeepSmartshelf(StorageMode.LIST).toString().length(),
+            sack.toString().length());
+
+        testObjectEqual("Item.of", Item.of("Book", 120), Item.of("Book", 120));
+        testObjectEqual("Item.of", true, Item.of("Book", 120) == ITEM8.intern());
+        testIntEqual("hashCode", ITEM8.hashCode(), Item.of("Book", 120).hashCode());
+
+        ConcurrentSmartshelf shared = makeConcurrentSmartshelf();
+        testIntEqual("numberOfItems", 8000, shared.numberOfItems());
+        testLongEqual("totalWeightInGrammes", 220000, shared.totalWeightInGrammes());
+        testObjectEqual("greatestItem", ITEM1, shared.greatestItem());
+        testIntEqual("makeNewSmartshelfWith", 4000, shared.makeNewSmartshelfWith(20).numberOfItems());
+        shared.keepOnlyItemsWith(20);
+        testLongEqual("totalWeightInGrammes", 80000, shared.totalWeightInGrammes());
+
+        sack = makeKeepSmartshelf();
+        testIntEqual("viewOfItemsWith", 3, sack.viewOfItemsWith(120).numberOfItems());
+        sack = makeKeepSmartshelf();
+        Smartshelf view = sack.viewOfItemsWith(120);
+        sack.empty();
+        testIntEqual("viewOfItemsWith", 260, view.totalWeightInGrammes());
+        sack = makeKeepSmartshelf();
+        view = sack.viewOfItemsWith(120);
+        view.add(ITEM1);
+        testObjectEqual("viewOfItemsWith", ITEM4, sack.greatestItem());
+        testObjectEqual("viewOfItemsWith", "[" + ITEM8 + ", " + ITEM8 + ", " + ITEM2 + ", "
+            + ITEM1 + "]", view.toString());
+
+        sacks = makeManySmartshelfs();
+        testObjectEqual("heaviestSmartshelf", sacks[1234], Smartshelf.heaviestSmartshelf(sacks));
+
+        sack = new Smartshelf(StorageMode.COLUMNAR, 3);
+        testObjectEqual("addAll", true, sack.addAll(Arrays.asList(ITEM1, null, ITEM2)));
+        testIntEqual("addAll", 2, sack.numberOfItems());
+        testObjectEqual("addAll", false, sack.addAll(Stream.of((Item) null)));
+        sack.ensureCapacity(100);
+        sack.addAll(Stream.of(ITEM3, ITEM4));
+        testIntEqual("addAll", 1455, sack.totalWeightInGrammes());
+
+        sack = makeKeepSmartshelf();
+        StringWriter out = new StringWriter();
+        try {
+            sack.renderTo(out);
+        } catch (IOException e) {
+            out.write(e.toString());
+        }
+        testObjectEqual("renderTo", sack.toString(), out.toString());
+        sack = makeHeavySmartshelf();
+        out = new StringWriter();
+        try {
+            sack.renderTo(out);
+        } catch (IOException e) {
+            out.write(e.toString());
+        }
+        testObjectEqual("renderTo", sack.toString(), out.toString());
+
+        sack = makeKeepSmartshelf();
+        Smartshelf loaded;
+        try {
+            Path file = Files.createTempFile("smartshelf", ".snapshot");
+            SmartshelfSnapshot.write(sack, file);
+            loaded = SmartshelfSnapshot.load(file);
+            Files.delete(file);
+        } catch (IOException e) {
+            loaded = new Smartshelf();
+        }
+        testObjectEqual("SmartshelfSnapshot", sack.toString(), loaded.toString());
+        testIntEqual("SmartshelfSnapshot", 1455, loaded.totalWeightInGrammes());
+        testObjectEqual("SmartshelfSnapshot", ITEM4, loaded.greatestItem());
+        loaded.keepOnlyItemsWith(120);
+        testObjectEqual("SmartshelfSnapshot", "[" + ITEM8 + ", " + ITEM8 + ", " + ITEM2 + "]",
+            loaded.toString());
+
+        try (Smartshelf offHeap = makeKeepSmartshelf(StorageMode.OFF_HEAP)) {
+            testObjectEqual("greatestItem", ITEM4, offHeap.greatestItem());
+            testIntEqual("makeNewSmartshelfWith", 3, offHeap.makeNewSmartshelfWith(120).numberOfItems());
+            testIntEqual("totalWeightInGrammes", 1455, offHeap.totalWeightInGrammes());
+            testObjectEqual("toString", makeKeepSmartshelf().toString(), offHeap.toString());
+        }
+
+        Smartshelf recovered;
+        try {
+            Path dir = Files.createTempDirectory("smartshelf");
+            // a tiny compaction threshold makes sure that compaction happens
+            try (SmartshelfLog wal = new SmartshelfLog(dir, 0, 64)) {
+                wal.shelf().addAll(new Item[] { ITEM3, null, ITEM4, ITEM5, ITEM6, ITEM7, ITEM8 });
+                wal.shelf().empty();
+                wal.shelf().addAll(new Item[] { ITEM3, null, ITEM4, ITEM5, ITEM6, ITEM7, ITEM8, ITEM8 });
+                wal.shelf().add(ITEM2);
+                wal.shelf().keepOnlyItemsWith(400);
+            }
+            try (SmartshelfLog wal = new SmartshelfLog(dir, 10, 1 << 20)) {
+                recovered = wal.shelf();
+            }
+            deleteDirectory(dir);
+        } catch (IOException e) {
+            recovered = new Smartshelf();
+        }
+        testObjectEqual("SmartshelfLog", makeKeepSmartshelf().toString(), recovered.toString());
+        testIntEqual("SmartshelfLog", 1455, recovered.totalWeightInGrammes());
+
+        sack = makeKeepSmartshelf();
+        testObjectEqual("topK", Arrays.asList(ITEM4, ITEM6, ITEM5), sack.topK(3));
+        sack = makeKeepSmartshelf();
+        testObjectEqual("bottomK", Arrays.asList(ITEM2, ITEM8, ITEM8), sack.bottomK(3));
+        sack = makeKeepSmartshelf();
+        testObjectEqual("topK", 6, sack.topK(10).size());
+        sack = makeKeepSmartshelf();
+        testObjectEqual("kthGreatest", ITEM6, sack.kthGreatest(2));
+        sack = makeKeepSmartshelf();
+        testObjectEqual("kthGreatest", null, sack.kthGreatest(7));
+        sack = makeKeepSmartshelf();
+        testIntEqual("weightPercentile", 120, sack.weightPercentile(50));
+        sack = makeKeepSmartshelf();
+        testIntEqual("weightPercentile", 400, sack.weightPercentile(100));
+
+        sack = makeKeepSmartshelf();
+        testLongEqual("query", 400, sack.query().weightBetween(100, 400).nameStartsWith("L").total());
+        sack = makeKeepSmartshelf();
+        testIntEqual("query", 3, sack.query().weightAtLeast(120).weightAtMost(395).count());
+        sack = makeKeepSmartshelf();
+        testObjectEqual("query", ITEM5, sack.query().nameMatching(n -> n.contains("a")).weightAtMost(399).max());
+        sack = makeKeepSmartshelf();
+        testDoubleEqual("query", -1.0, sack.query().weightBetween(500, 100).average());
+        sack = makeKeepSmartshelf();
+        testObjectEqual("query", "[" + ITEM8 + ", " + ITEM8 + "]",
+            sack.query().where(it -> it.equals(ITEM8)).toSmartshelf().toString());
+
+        sack = makeKeepSmartshelf();
+        testIntEqual("countByName", 2, sack.countByName("Book"));
+        sack = makeKeepSmartshelf(StorageMode.COLUMNAR);
+        sack.enableNameIndex();
+        testIntEqual("countByName", 2, sack.countByName("Book"));
+        testObjectEqual("containsName", false, sack.containsName("Kilo"));
+        testObjectEqual("namesStartingWith", "[Soda]", sack.namesStartingWith("So").toString());
+        testIntEqual("removeByName", 2, sack.removeByName("Book"));
+        testIntEqual("removeByName", 0, sack.removeByName("Book"));
+        testIntEqual("totalWeightInGrammes", 1215, sack.totalWeightInGrammes());
+        sack.keepOnlyItemsWith(395);
+        testObjectEqual("removeByName", ITEM5, sack.greatestItem());
+        testIntEqual("removeByName", 1, sack.removeByName("Water"));
+        testObjectEqual("removeByName", ITEM2, sack.greatestItem());
+        testObjectEqual("containsName", false, sack.containsName("Soda"));
+
+        SmartshelfMetrics.reset();
+        SmartshelfMetrics.enable();
+        sack = makeKeepSmartshelf();
+        SmartshelfMetrics.watch(sack);
+        sack.toString();
+        Smartshelf.heaviestSmartshelf(makeTwoSmartshelfs());
+        SmartshelfMetrics.disable();
+        sack.add(ITEM1);
+        testLongEqual("SmartshelfMetrics", 1, SmartshelfMetrics.calls(SmartshelfMetrics.Operation.ADD));
+        testLongEqual("SmartshelfMetrics", 3, SmartshelfMetrics.calls(SmartshelfMetrics.Operation.ADD_ALL));
+        testLongEqual("SmartshelfMetrics", 1, SmartshelfMetrics.calls(SmartshelfMetrics.Operation.KEEP_ONLY_ITEMS_WITH));
+        testLongEqual("SmartshelfMetrics", 1, SmartshelfMetrics.calls(SmartshelfMetrics.Operation.TO_STRING));
+        testLongEqual("SmartshelfMetrics", 1, SmartshelfMetrics.calls(SmartshelfMetrics.Operation.HEAVIEST_SMARTSHELF));
+        testObjectEqual("SmartshelfMetrics", true, SmartshelfMetrics.snapshot().contains("\nitems,7\n"));
+        testObjectEqual("SmartshelfMetrics", true, SmartshelfMetrics.snapshot().contains("\ncapacity,10\n"));
+        testIntEqual("SmartshelfMetrics", 1, SmartshelfMetrics.watchedSmartshelfs());
+
+        // a small run; use SmartshelfDifferentialTest.main for large shelves
+        SmartshelfDifferentialTest.Report report = SmartshelfDifferentialTest.run(16, 1000, 1);
+        testLongEqual("SmartshelfDifferentialTest", 0, report.fails());
+        testObjectEqual("SmartshelfDifferentialTest", true, report.passes() > 0);
+
+        testIntEqual("SmartshelfLoadDriver", 20, SmartshelfLoadDriver.parseMix("ADD:16,GREATEST_ITEM:3,ADD:1").length);
+        SmartshelfLoadDriver.LatencyHistogram latencies = new SmartshelfLoadDriver.LatencyHistogram();
+        for (int i = 1; i <= 1000; i++) {
+            latencies.record(1000 * i);
+        }
+        testObjectEqual("SmartshelfLoadDriver", true, Math.abs(latencies.percentile(50) - 500_000) <= 500_000 * 0.04);
+        testLongEqual("SmartshelfLoadDriver", 1_000_000, latencies.percentile(100));
+
+        Warehouse warehouse = new Warehouse();
+        Smartshelf[] warehouseShelves = makeTwoSmartshelfs();
+        Smartshelf keep = makeKeepSmartshelf();
+        warehouse.add(warehouseShelves[0]);
+        warehouse.add(warehouseShelves[1]);
+        warehouse.add(keep);
+        testObjectEqual("Warehouse", keep, warehouse.heaviestSmartshelf());
+        warehouseShelves[1].keepOnlyItemsWith(999);
+        warehouseShelves[0].add(ITEM3);
+        testObjectEqual("Warehouse", Arrays.asList(keep, warehouseShelves[0], warehouseShelves[1]),
+            warehouse.heaviestSmartshelfs(5));
+        testLongEqual("Warehouse", 2510, warehouse.totalWeightInGrammes());
+        testLongEqual("Warehouse", 9, warehouse.numberOfItems());
+        warehouse.remove(keep);
+        keep.add(ITEM3);
+        testObjectEqual("Warehouse", warehouseShelves[0], warehouse.heaviestSmartshelf());
+        testLongEqual("Warehouse", 1055, warehouse.totalWeightInGrammes());
+
+        sack = makeKeepSmartshelf();
+        testObjectEqual("weightBands", "[<=50g: 1 Items, 20g; <=120g: 2 Items, 240g; <=400g: 3 Items, 1195g; >400g: 0 Items, 0g]",
+            sack.weightBands(new int[] { 50, 120, 400 }).toString());
+        sack = makeKeepSmartshelf(StorageMode.COLUMNAR);
+        Smartshelf[] bands = sack.partitionByWeight(new int[] { 50, 120, 400 });
+        testIntEqual("partitionByWeight", 4, bands.length);
+        testObjectEqual("partitionByWeight", "[(Book, 120g), (Book, 120g)]", bands[1].toString());
+        testObjectEqual("partitionByWeight", ITEM4, bands[2].greatestItem());
+        testIntEqual("partitionByWeight", 0, bands[3].numberOfItems());
+        testIntEqual("partitionByWeight", 6, sack.numberOfItems());
+
+        sack = new Smartshelf();
+        CountDownLatch completed = new CountDownLatch(2);
+        List<List<SmartshelfPublisher.Change>> batches;
+        List<SmartshelfPublisher.Alert> alerts;
+        try (SmartshelfPublisher publisher = new SmartshelfPublisher(sack, 100, 0, 16)) {
+            batches = collect(publisher, completed);
+            alerts = collect(publisher.alertWhen(SmartshelfPublisher.Alert.Measure.NUMBER_OF_ITEMS, 8), completed);
+            sack.addAll(new Item[] { ITEM3, null, ITEM4, ITEM5, ITEM6, ITEM7, ITEM8, null, null, ITEM8 });
+            sack.add(ITEM2);
+            sack.keepOnlyItemsWith(400);
+        }
+        try {
+            completed.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        testIntEqual("SmartshelfPublisher", 1, batches.size());
+        testObjectEqual("SmartshelfPublisher", "KEPT_ONLY_ITEMS_WITH 400 -> 6 Items, 1455g",
+            batches.isEmpty() ? null : batches.get(0).get(batches.get(0).size() - 1).toString());
+        testObjectEqual("SmartshelfPublisher", "[NUMBER_OF_ITEMS >= 8: 8, NUMBER_OF_ITEMS < 8: 6]",
+            alerts.toString());
+
+        sack = makeKeepSmartshelf();
+        sack.enableWeightHistogram();
+        testIntEqual("numberOfItemsWith", 3, sack.numberOfItemsWith(120));
+        sack = makeKeepSmartshelf();
+        testLongEqual("totalWeightInGrammesOfItemsWith", 260, sack.totalWeightInGrammesOfItemsWith(120));
+        sack = makeKeepSmartshelf();
+        sack.enableWeightHistogram();
+        sack.add(ITEM1);
+        testLongEqual("totalWeightInGrammesOfItemsWith", 1490, sack.totalWeightInGrammesOfItemsWith(1000));
+        sack = makeKeepSmartshelf();
+        sack.enableWeightHistogram();
+        testIntEqual("weightPercentile", 120, sack.weightPercentile(50));
+        sack = makeKeepSmartshelf(StorageMode.COLUMNAR);
+        sack.enableWeightHistogram();
+        sack.keepOnlyItemsWith(395);
+        testIntEqual("weightPercentile", 395, sack.weightPercentile(100));
+        sack = makeKeepSmartshelf();
+        testObjectEqual("sortedItems", Arrays.asList(ITEM2, ITEM8, ITEM8, ITEM5, ITEM6, ITEM4), sack.sortedItems());
+        sack = makeKeepSmartshelf(StorageMode.COLUMNAR);
+        sack.enableWeightHistogram();
+        sack.add(ITEM1);
+        testObjectEqual("sortedItems", Arrays.asList(ITEM2, ITEM1, ITEM8, ITEM8, ITEM5, ITEM6, ITEM4), sack.sortedItems());
+        sack = makeKeepSmartshelf();
+        Iterator<Item> sorted = sack.sortedIterator();
+        sorted.next();
+        testObjectEqual("sortedIterator", ITEM8, sorted.next());
+
+        sack = makeKeepSmartshelf();
+        testObjectEqual("equals", true, sack.equals(new Smartshelf(new Item[] { ITEM8, ITEM6, ITEM2, ITEM8, ITEM5, ITEM4 })));
+        sack = makeKeepSmartshelf();
+        testObjectEqual("equals", true, sack.equals(makeKeepSmartshelf(StorageMode.COLUMNAR)));
+        sack = makeKeepSmartshelf();
+        testObjectEqual("equals", false, sack.equals(new Smartshelf(new Item[] { ITEM8, ITEM6, ITEM2, ITEM2, ITEM5, ITEM4 })));
+        sack = makeKeepSmartshelf();
+        sack.removeByName("Soda");
+        testObjectEqual("equals", false, sack.equals(makeKeepSmartshelf()));
+        sack = makeKeepSmartshelf();
+        testIntEqual("hashCode", makeKeepSmartshelf(StorageMode.SORTED).hashCode(), sack.hashCode());
+        sack = makeKeepSmartshelf();
+        sack.keepOnlyItemsWith(120);
+        testIntEqual("hashCode", new Smartshelf(new Item[] { ITEM8, ITEM2, ITEM8 }).hashCode(), sack.hashCode());
+        sack = makeKeepSmartshelf();
+        testObjectEqual("equals", true, sack.viewOfItemsWith(120).equals(sack.makeNewSmartshelfWith(120)));
+        sack = makeKeepSmartshelf();
+        sack.empty();
+        testObjectEqual("equals", true, sack.equals(new Smartshelf()));
+
+        try {
+            Path dir = Files.createTempDirectory("smartshelf");
+            try (SmartshelfLog wal = new SmartshelfLog(dir, 0, 1 << 20)) {
+                wal.shelf().add(ITEM1);
+                wal.shelf().add(ITEM2);
+            }
+            // an ADD record of -5 grammes, as left behind by a corrupt disk
+            Files.write(dir.resolve("log-0"), new byte[] { 1, -1, -1, -1, -5, 0, 0, 0, 1, 'x' },
+                StandardOpenOption.APPEND);
+            try (SmartshelfLog wal = new SmartshelfLog(dir, 10, 1 << 20)) {
+                recovered = wal.shelf();
+            }
+            deleteDirectory(dir);
+        } catch (IOException e) {
+            recovered = new Smartshelf();
+        }
+        testObjectEqual("SmartshelfLog", "[(Pen, 35g), (Face mask, 20g)]", recovered.toString());
+
+        String loadResult;
+        try {
+            Path file = Files.createTempFile("smartshelf", ".snapshot");
+            SmartshelfSnapshot.write(makeKeepSmartshelf(), file);
+            byte[] bytes = Files.readAllBytes(file);
+            // the last name byte is missing
+            Files.write(file, Arrays.copyOf(bytes, bytes.length - 1));
+            try {
+                loadResult = SmartshelfSnapshot.load(file).toString();
+            } catch (IOException e) {
+                loadResult = "IOException";
+            }
+            Files.delete(file);
+        } catch (IOException e) {
+            loadResult = "not written";
+        }
+        testObjectEqual("SmartshelfSnapshot", "IOException", loadResult);
+
+        sack = makeKeepSmartshelf();
+        view = sack.viewOfItemsWith(120);
+        sack.add(ITEM8);
+        testIntEqual("viewOfItemsWith", 3, view.numberOfItems());
+        sack.keepOnlyItemsWith(100);
+        testObjectEqual("viewOfItemsWith", "[" + ITEM8 + ", " + ITEM8 + ", " + ITEM2 + "]", view.toString());
+
+        view = makeKeepSmartshelf().viewOfItemsWith(120);
+        sacks = new Smartshelf[Smartshelf.PARALLEL_THRESHOLD];
+        Arrays.fill(sacks, view);
+        testObjectEqual("heaviestSmartshelf", view, Smartshelf.heaviestSmartshelf(sacks));
+        testIntEqual("heaviestSmartshelf", 260, view.totalWeightInGrammes());
+
+        sack = new Smartshelf(StorageMode.COLUMNAR);
+        for (int i = 1; i <= 100; i++) {
+            sack.add(new Item("Item" + i, i));
+        }
+        // forgets the names of the removed Items
+        sack.keepOnlyItemsWith(2);
+        sack.add(new Item("Item50", 3));
+        testIntEqual("removeByName", 1, sack.removeByName("Item1"));
+        testObjectEqual("keepOnlyItemsWith", "[(Item2, 2g), (Item50, 3g)]", sack.toString());
+
+        sack = makeKeepSmartshelf(StorageMode.COLUMNAR);
+        view = sack.viewOfItemsWith(120);
+        testIntEqual("removeByName", 0, view.removeByName("Soda"));
+        testIntEqual("removeByName", 1, view.removeByName("Face mask"));
+        testObjectEqual("removeByName", "[" + ITEM8 + ", " + ITEM8 + "]", view.toString());
+        testIntEqual("removeByName", 6, sack.numberOfItems());
+
+        sack = makeKeepSmartshelf();
+        try {
+            Path file = Files.createTempFile("smartshelf", ".snapshot");
+            SmartshelfSnapshot.write(sack, file);
+            loaded = SmartshelfSnapshot.load(file);
+            Files.delete(file);
+        } catch (IOException e) {
+            loaded = new Smartshelf();
+        }
+        // neither needs the greatest Item, which is only found afterwards
+        testIntEqual("hashCode", sack.hashCode(), loaded.hashCode());
+        testObjectEqual("equals", true, loaded.equals(sack));
+        testObjectEqual("greatestItem", ITEM4, loaded.greatestItem());
+
+        sack = makeKeepSmartshelf(StorageMode.COLUMNAR);
+        sack.hashCode();
+        sack.keepOnlyItemsWith(120);
+        Smartshelf listSack = makeKeepSmartshelf();
+        listSack.keepOnlyItemsWith(120);
+        testIntEqual("hashCode", listSack.hashCode(), sack.hashCode());
+        testObjectEqual("equals", true, sack.equals(listSack));
+
+        String compactResult;
+        try {
+            Path dir = Files.createTempDirectory("smartshelf");
+            // left behind by a compaction that was interrupted
+            Files.write(dir.resolve("snapshot-7.tmp"), new byte[] { 1, 2, 3 });
+            try (SmartshelfLog wal = new SmartshelfLog(dir, 10, 1 << 20)) {
+                wal.shelf().add(ITEM1);
+                wal.compact();
+                // compact returns only after the snapshot has been written
+                compactResult = Files.exists(dir.resolve("snapshot-7.tmp")) + " "
+                    + Files.exists(dir.resolve("snapshot-1"));
+            }
+            deleteDirectory(dir);
+        } catch (IOException e) {
+            compactResult = e.toString();
+        }
+        testObjectEqual("SmartshelfLog", "false true", compactResult);
+
+        sack = makeKeepSmartshelf(StorageMode.COLUMNAR);
+        Item[] lastItems = new Item[2];
+        sack.forEachItem(it -> lastItems[0] = it);
+        sack.forEachItem(it -> lastItems[1] = it);
+        // the Items made for iteration are cached
+        testObjectEqual("Item.of", true, lastItems[0] == lastItems[1]);
+
+        sack = new Smartshelf(StorageMode.MULTISET);
+        sack.enableNameIndex();
+        sack.enableWeightHistogram();
+        for (int i = 0; i < 1000; i++) {
+            sack.add(ITEM1);
+            sack.add(ITEM4);
+            sack.add(ITEM8);
+        }
+        sack.hashCode();
+        // every distinct Item is removed once, with its count
+        sack.keepOnlyItemsWith(120);
+        testIntEqual("countByName", 0, sack.countByName("Soda"));
+        testIntEqual("numberOfItemsWith", 2000, sack.numberOfItemsWith(120));
+        testIntEqual("removeByName", 1000, sack.removeByName("Book"));
+        testLongEqual("totalWeightInGrammes", 35000, sack.totalWeightInGrammesAsLong());
+        Smartshelf pens = new Smartshelf();
+        for (int i = 0; i < 1000; i++) {
+            pens.add(ITEM1);
+        }
+        testIntEqual("hashCode", pens.hashCode(), sack.hashCode());
+
+        sack = new Smartshelf(StorageMode.SORTED);
+        sack.enableWeightHistogram();
+        for (int i = 0; i < 1000; i++) {
+            sack.add(ITEM2);
+            sack.add(ITEM4);
+            sack.add(ITEM6);
+        }
+        // Soda and Lemonade are cut off together, as 2000 Items of 400 g
+        sack.keepOnlyItemsWith(395);
+        testIntEqual("numberOfItemsWith", 1000, sack.numberOfItemsWith(400));
+        testLongEqual("totalWeightInGrammes", 20000, sack.totalWeightInGrammesAsLong());
+        testObjectEqual("greatestItem", ITEM2, sack.greatestItem());
+
+        sack = makeKeepSmartshelf(StorageMode.SORTED);
+        testIntEqual("query", 3, sack.query().weightAtLeast(120).weightAtMost(395).count());
+        sack = makeKeepSmartshelf(StorageMode.SORTED);
+        testLongEqual("query", 400, sack.query().weightBetween(100, 400).nameStartsWith("L").total());
+        sack = makeKeepSmartshelf(StorageMode.COLUMNAR);
+        testDoubleEqual("query", 120.0, sack.query().weightBetween(100, 120).average());
+        sack = makeKeepSmartshelf(StorageMode.SORTED);
+        Smartshelf selected = sack.query().weightAtLeast(400).toSmartshelf();
+        selected.add(ITEM1);
+        // a SORTED result puts the lighter Item first
+        testObjectEqual("query", "[" + ITEM1 + ", " + ITEM6 + ", " + ITEM4 + "]", selected.toString());
+
+        sack = makeKeepSmartshelf(StorageMode.SORTED);
+        testObjectEqual("addAll", false, sack.addAll(new Item[] { null, null }));
+        testLongEqual("totalWeightInGrammes", 1455, sack.totalWeightInGrammesAsLong());
+
         System.out.println();
         System.out.println(YEA + ": " + passes);
         System.out.println(NAY + ": " + fails);
@@ -472,8 +1075,154 @@ OK     - Test 63: totalWeightInGrammes, expected: 1455, actual: 1455
 OK     - Test 64: averageWeightInGrammes, expected: 242.5, actual: 242.5
 OK     - Test 65: heaviestSmartshelf, expected: null, actual: null
 OK     - Test 66: heaviestSmartshelf, expected: 1000, actual: 1000
+OK     - Test 67: totalWeightInGrammesAsLong, expected: 4294967329, actual: 4294967329
+OK     - Test 68: greatestItem, expected: (Pen, 35g), actual: (Pen, 35g)
+OK     - Test 69: greatestItem, expected: (Soda, 400g), actual: (Soda, 400g)
+OK     - Test 70: numberOfItems, expected: 6, actual: 6
+OK     - Test 71: makeNewSmartshelfWith, expected: 3, actual: 3
+OK     - Test 72: totalWeightInGrammes, expected: 1455, actual: 1455
+OK     - Test 73: toString, expected: [(Soda, 400g), (Water, 395g), (Lemonade, 400g), (Book, 120g), (Book, 120g), (Face mask, 20g)], actual: [(Soda, 400g), (Water, 395g), (Lemonade, 400g), (Book, 120g), (Book, 120g), (Face mask, 20g)]
+OK     - Test 74: greatestItem, expected: (Soda, 400g), actual: (Soda, 400g)
+OK     - Test 75: numberOfItems, expected: 6, actual: 6
+OK     - Test 76: makeNewSmartshelfWith, expected: 3, actual: 3
+OK     - Test 77: totalWeightInGrammes, expected: 1455, actual: 1455
+OK     - Test 78: toString, expected: [(Face mask, 20g), (Book, 120g), (Book, 120g), (Water, 395g), (Lemonade, 400g), (Soda, 400g)], actual: [(Face mask, 20g), (Book, 120g), (Book, 120g), (Water, 395g), (Lemonade, 400g), (Soda, 400g)]
+OK     - Test 79: greatestItem, expected: (Soda, 400g), actual: (Soda, 400g)
+OK     - Test 80: numberOfItems, expected: 6, actual: 6
+OK     - Test 81: makeNewSmartshelfWith, expected: 3, actual: 3
+OK     - Test 82: totalWeightInGrammes, expected: 1455, actual: 1455
+OK     - Test 83: toString, expected: 93, actual: 93
+OK     - Test 84: Item.of, expected: (Book, 120g), actual: (Book, 120g)
+OK     - Test 85: Item.of, expected: true, actual: true
+OK     - Test 86: hashCode, expected: 64369295, actual: 64369295
+OK     - Test 87: numberOfItems, expected: 8000, actual: 8000
+OK     - Test 88: totalWeightInGrammes, expected: 220000, actual: 220000
+OK     - Test 89: greatestItem, expected: (Pen, 35g), actual: (Pen, 35g)
+OK     - Test 90: makeNewSmartshelfWith, expected: 4000, actual: 4000
+OK     - Test 91: totalWeightInGrammes, expected: 80000, actual: 80000
+OK     - Test 92: viewOfItemsWith, expected: 3, actual: 3
+OK     - Test 93: viewOfItemsWith, expected: 260, actual: 260
+OK     - Test 94: viewOfItemsWith, expected: (Soda, 400g), actual: (Soda, 400g)
+OK     - Test 95: viewOfItemsWith, expected: [(Book, 120g), (Book, 120g), (Face mask, 20g), (Pen, 35g)], actual: [(Book, 120g), (Book, 120g), (Face mask, 20g), (Pen, 35g)]
+OK     - Test 96: heaviestSmartshelf, expected: [(Kilogramme, 1000g), (Kilo, 1000g)], actual: [(Kilogramme, 1000g), (Kilo, 1000g)]
+OK     - Test 97: addAll, expected: true, actual: true
+OK     - Test 98: addAll, expected: 2, actual: 2
+OK     - Test 99: addAll, expected: false, actual: false
+OK     - Test 100: addAll, expected: 1455, actual: 1455
+OK     - Test 101: renderTo, expected: [(Soda, 400g), (Water, 395g), (Lemonade, 400g), (Book, 120g), (Book, 120g), (Face mask, 20g)], actual: [(Soda, 400g), (Water, 395g), (Lemonade, 400g), (Book, 120g), (Book, 120g), (Face mask, 20g)]
+OK     - Test 102: renderTo, expected: [(Anvil, 2147483647g), (Pen, 35g), (Anvil, 2147483647g)], actual: [(Anvil, 2147483647g), (Pen, 35g), (Anvil, 2147483647g)]
+OK     - Test 103: SmartshelfSnapshot, expected: [(Soda, 400g), (Water, 395g), (Lemonade, 400g), (Book, 120g), (Book, 120g), (Face mask, 20g)], actual: [(Soda, 400g), (Water, 395g), (Lemonade, 400g), (Book, 120g), (Book, 120g), (Face mask, 20g)]
+OK     - Test 104: SmartshelfSnapshot, expected: 1455, actual: 1455
+OK     - Test 105: SmartshelfSnapshot, expected: (Soda, 400g), actual: (Soda, 400g)
+OK     - Test 106: SmartshelfSnapshot, expected: [(Book, 120g), (Book, 120g), (Face mask, 20g)], actual: [(Book, 120g), (Book, 120g), (Face mask, 20g)]
+OK     - Test 107: greatestItem, expected: (Soda, 400g), actual: (Soda, 400g)
+OK     - Test 108: makeNewSmartshelfWith, expected: 3, actual: 3
+OK     - Test 109: totalWeightInGrammes, expected: 1455, actual: 1455
+OK     - Test 110: toString, expected: [(Soda, 400g), (Water, 395g), (Lemonade, 400g), (Book, 120g), (Book, 120g), (Face mask, 20g)], actual: [(Soda, 400g), (Water, 395g), (Lemonade, 400g), (Book, 120g), (Book, 120g), (Face mask, 20g)]
+OK     - Test 111: SmartshelfLog, expected: [(Soda, 400g), (Water, 395g), (Lemonade, 400g), (Book, 120g), (Book, 120g), (Face mask, 20g)], actual: [(Soda, 400g), (Water, 395g), (Lemonade, 400g), (Book, 120g), (Book, 120g), (Face mask, 20g)]
+OK     - Test 112: SmartshelfLog, expected: 1455, actual: 1455
+OK     - Test 113: topK, expected: [(Soda, 400g), (Lemonade, 400g), (Water, 395g)], actual: [(Soda, 400g), (Lemonade, 400g), (Water, 395g)]
+OK     - Test 114: bottomK, expected: [(Face mask, 20g), (Book, 120g), (Book, 120g)], actual: [(Face mask, 20g), (Book, 120g), (Book, 120g)]
+OK     - Test 115: topK, expected: 6, actual: 6
+OK     - Test 116: kthGreatest, expected: (Lemonade, 400g), actual: (Lemonade, 400g)
+OK     - Test 117: kthGreatest, expected: null, actual: null
+OK     - Test 118: weightPercentile, expected: 120, actual: 120
+OK     - Test 119: weightPercentile, expected: 400, actual: 400
+OK     - Test 120: query, expected: 400, actual: 400
+OK     - Test 121: query, expected: 3, actual: 3
+OK     - Test 122: query, expected: (Water, 395g), actual: (Water, 395g)
+OK     - Test 123: query, expected: -1.0, actual: -1.0
+OK     - Test 124: query, expected: [(Book, 120g), (Book, 120g)], actual: [(Book, 120g), (Book, 120g)]
+OK     - Test 125: countByName, expected: 2, actual: 2
+OK     - Test 126: countByName, expected: 2, actual: 2
+OK     - Test 127: containsName, expected: false, actual: false
+OK     - Test 128: namesStartingWith, expected: [Soda], actual: [Soda]
+OK     - Test 129: removeByName, expected: 2, actual: 2
+OK     - Test 130: removeByName, expected: 0, actual: 0
+OK     - Test 131: totalWeightInGrammes, expected: 1215, actual: 1215
+OK     - Test 132: removeByName, expected: (Water, 395g), actual: (Water, 395g)
+OK     - Test 133: removeByName, expected: 1, actual: 1
+OK     - Test 134: removeByName, expected: (Face mask, 20g), actual: (Face mask, 20g)
+OK     - Test 135: containsName, expected: false, actual: false
+OK     - Test 136: SmartshelfMetrics, expected: 1, actual: 1
+OK     - Test 137: SmartshelfMetrics, expected: 3, actual: 3
+OK     - Test 138: SmartshelfMetrics, expected: 1, actual: 1
+OK     - Test 139: SmartshelfMetrics, expected: 1, actual: 1
+OK     - Test 140: SmartshelfMetrics, expected: 1, actual: 1
+OK     - Test 141: SmartshelfMetrics, expected: true, actual: true
+OK     - Test 142: SmartshelfMetrics, expected: true, actual: true
+OK     - Test 143: SmartshelfMetrics, expected: 1, actual: 1
+OK     - Test 144: SmartshelfDifferentialTest, expected: 0, actual: 0
+OK     - Test 145: SmartshelfDifferentialTest, expected: true, actual: true
+OK     - Test 146: SmartshelfLoadDriver, expected: 20, actual: 20
+OK     - Test 147: SmartshelfLoadDriver, expected: true, actual: true
+OK     - Test 148: SmartshelfLoadDriver, expected: 1000000, actual: 1000000
+OK     - Test 149: Warehouse, expected: [(Soda, 400g), (Water, 395g), (Lemonade, 400g), (Book, 120g), (Book, 120g), (Face mask, 20g)], actual: [(Soda, 400g), (Water, 395g), (Lemonade, 400g), (Book, 120g), (Book, 120g), (Face mask, 20g)]
+OK     - Test 150: Warehouse, expected: [[(Soda, 400g), (Water, 395g), (Lemonade, 400g), (Book, 120g), (Book, 120g), (Face mask, 20g)], [(Pen, 35g), (Face mask, 20g), (Kilogramme, 1000g)], []], actual: [[(Soda, 400g), (Water, 395g), (Lemonade, 400g), (Book, 120g), (Book, 120g), (Face mask, 20g)], [(Pen, 35g), (Face mask, 20g), (Kilogramme, 1000g)], []]
+OK     - Test 151: Warehouse, expected: 2510, actual: 2510
+OK     - Test 152: Warehouse, expected: 9, actual: 9
+OK     - Test 153: Warehouse, expected: [(Pen, 35g), (Face mask, 20g), (Kilogramme, 1000g)], actual: [(Pen, 35g), (Face mask, 20g), (Kilogramme, 1000g)]
+OK     - Test 154: Warehouse, expected: 1055, actual: 1055
+OK     - Test 155: weightBands, expected: [<=50g: 1 Items, 20g; <=120g: 2 Items, 240g; <=400g: 3 Items, 1195g; >400g: 0 Items, 0g], actual: [<=50g: 1 Items, 20g; <=120g: 2 Items, 240g; <=400g: 3 Items, 1195g; >400g: 0 Items, 0g]
+OK     - Test 156: partitionByWeight, expected: 4, actual: 4
+OK     - Test 157: partitionByWeight, expected: [(Book, 120g), (Book, 120g)], actual: [(Book, 120g), (Book, 120g)]
+OK     - Test 158: partitionByWeight, expected: (Soda, 400g), actual: (Soda, 400g)
+OK     - Test 159: partitionByWeight, expected: 0, actual: 0
+OK     - Test 160: partitionByWeight, expected: 6, actual: 6
+OK     - Test 161: SmartshelfPublisher, expected: 1, actual: 1
+OK     - Test 162: SmartshelfPublisher, expected: KEPT_ONLY_ITEMS_WITH 400 -> 6 Items, 1455g, actual: KEPT_ONLY_ITEMS_WITH 400 -> 6 Items, 1455g
+OK     - Test 163: SmartshelfPublisher, expected: [NUMBER_OF_ITEMS >= 8: 8, NUMBER_OF_ITEMS < 8: 6], actual: [NUMBER_OF_ITEMS >= 8: 8, NUMBER_OF_ITEMS < 8: 6]
+OK     - Test 164: numberOfItemsWith, expected: 3, actual: 3
+OK     - Test 165: totalWeightInGrammesOfItemsWith, expected: 260, actual: 260
+OK     - Test 166: totalWeightInGrammesOfItemsWith, expected: 1490, actual: 1490
+OK     - Test 167: weightPercentile, expected: 120, actual: 120
+OK     - Test 168: weightPercentile, expected: 395, actual: 395
+OK     - Test 169: sortedItems, expected: [(Face mask, 20g), (Book, 120g), (Book, 120g), (Water, 395g), (Lemonade, 400g), (Soda, 400g)], actual: [(Face mask, 20g), (Book, 120g), (Book, 120g), (Water, 395g), (Lemonade, 400g), (Soda, 400g)]
+OK     - Test 170: sortedItems, expected: [(Face mask, 20g), (Pen, 35g), (Book, 120g), (Book, 120g), (Water, 395g), (Lemonade, 400g), (Soda, 400g)], actual: [(Face mask, 20g), (Pen, 35g), (Book, 120g), (Book, 120g), (Water, 395g), (Lemonade, 400g), (Soda, 400g)]
+OK     - Test 171: sortedIterator, expected: (Book, 120g), actual: (Book, 120g)
+OK     - Test 172: equals, expected: true, actual: true
+OK     - Test 173: equals, expected: true, actual: true
+OK     - Test 174: equals, expected: false, actual: false
+OK     - Test 175: equals, expected: false, actual: false
+OK     - Test 176: hashCode, expected: -1374785096, actual: -1374785096
+OK     - Test 177: hashCode, expected: 2030140676, actual: 2030140676
+OK     - Test 178: equals, expected: true, actual: true
+OK     - Test 179: equals, expected: true, actual: true
+OK     - Test 180: SmartshelfLog, expected: [(Pen, 35g), (Face mask, 20g)], actual: [(Pen, 35g), (Face mask, 20g)]
+OK     - Test 181: SmartshelfSnapshot, expected: IOException, actual: IOException
+OK     - Test 182: viewOfItemsWith, expected: 3, actual: 3
+OK     - Test 183: viewOfItemsWith, expected: [(Book, 120g), (Book, 120g), (Face mask, 20g)], actual: [(Book, 120g), (Book, 120g), (Face mask, 20g)]
+OK     - Test 184: heaviestSmartshelf, expected: [(Book, 120g), (Book, 120g), (Face mask, 20g)], actual: [(Book, 120g), (Book, 120g), (Face mask, 20g)]
+OK     - Test 185: heaviestSmartshelf, expected: 260, actual: 260
+OK     - Test 186: removeByName, expected: 1, actual: 1
+OK     - Test 187: keepOnlyItemsWith, expected: [(Item2, 2g), (Item50, 3g)], actual: [(Item2, 2g), (Item50, 3g)]
+OK     - Test 188: removeByName, expected: 0, actual: 0
+OK     - Test 189: removeByName, expected: 1, actual: 1
+OK     - Test 190: removeByName, expected: [(Book, 120g), (Book, 120g)], actual: [(Book, 120g), (Book, 120g)]
+OK     - Test 191: removeByName, expected: 6, actual: 6
+OK     - Test 192: hashCode, expected: -1374785096, actual: -1374785096
+OK     - Test 193: equals, expected: true, actual: true
+OK     - Test 194: greatestItem, expected: (Soda, 400g), actual: (Soda, 400g)
+OK     - Test 195: hashCode, expected: 2030140676, actual: 2030140676
+OK     - Test 196: equals, expected: true, actual: true
+OK     - Test 197: SmartshelfLog, expected: false true, actual: false true
+OK     - Test 198: Item.of, expected: true, actual: true
+OK     - Test 199: countByName, expected: 0, actual: 0
+OK     - Test 200: numberOfItemsWith, expected: 2000, actual: 2000
+OK     - Test 201: removeByName, expected: 1000, actual: 1000
+OK     - Test 202: totalWeightInGrammes, expected: 35000, actual: 35000
+OK     - Test 203: hashCode, expected: -1083404576, actual: -1083404576
+OK     - Test 204: numberOfItemsWith, expected: 1000, actual: 1000
+OK     - Test 205: totalWeightInGrammes, expected: 20000, actual: 20000
+OK     - Test 206: greatestItem, expected: (Face mask, 20g), actual: (Face mask, 20g)
+OK     - Test 207: query, expected: 3, actual: 3
+OK     - Test 208: query, expected: 400, actual: 400
+OK     - Test 209: query, expected: 120.0, actual: 120.0
+OK     - Test 210: query, expected: [(Pen, 35g), (Lemonade, 400g), (Soda, 400g)], actual: [(Pen, 35g), (Lemonade, 400g), (Soda, 400g)]
+OK     - Test 211: addAll, expected: false, actual: false
+OK     - Test 212: totalWeightInGrammes, expected: 1455, actual: 1455
 
-OK    : 66
+OK    : 212
 FAILED: 0
 
      */
@@ -0,0 +1,168 @@
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.function.Consumer;
+import java.util.function.ObjIntConsumer;
+import java.util.function.IntConsumer;
+
+/**
+ * A read-only ItemStore that presents exactly those Items of another
+ * ItemStore whose weight is at most a given maximum, out of the Items the
+ * other ItemStore had when this one was made. The Items are not copied;
+ * the weight condition is evaluated whenever the Items are looked at. The
+ * other ItemStore may only be added to while this one is in use, and only
+ * if its add appends (see ItemStore.addAppends); Smartshelf ensures that.
+ * Counting and adding up weights only look at the weights of the other
+ * ItemStore, so for storage modes that keep them in a column of their own,
+ * no Item objects are made for that.
+ *
+ * @author sobia
+ */
+class FilteredItemStore implements ItemStore {
+
+    private final ItemStore source;
+
+    private final int maxItemWeightInGrammes;
+
+    /** The number of Items of source that are considered. */
+    private final int limit;
+
+    /** The number of matching Items in source; -1 until it is computed. */
+    private int size = -1;
+
+    /**
+     * Constructs a new FilteredItemStore.
+     *
+     * @param source the ItemStore whose Items are filtered; may only be
+     *  added to while the new FilteredItemStore is in use, if its add
+     *  appends
+     * @param maxItemWeightInGrammes the maximum weight in grammes of the
+     *  Items that are presented
+     */
+    FilteredItemStore(ItemStore source, int maxItemWeightInGrammes) {
+        this.source = source;
+        this.maxItemWeightInGrammes = maxItemWeightInGrammes;
+        this.limit = source.size();
+    }
+
+    @Override
+    public int size() {
+        if (this.size < 0) {
+            int[] count = new int[1];
+            forEachWeight(w -> count[0]++);
+            this.size = count[0];
+        }
+        return this.size;
+    }
+
+    @Override
+    public void add(Item item) {
+        throw new UnsupportedOperationException("FilteredItemStore is read-only");
+    }
+
+    @Override
+    public void ensureCapacity(int minCapacity) {
+        throw new UnsupportedOperationException("FilteredItemStore is read-only");
+    }
+
+    @Override
+    public void clear() {
+        throw new UnsupportedOperationException("FilteredItemStore is read-only");
+    }
+
+    @Override
+    public void removeHeavierThan(int maxItemWeightInGrammes, ObjIntConsumer<? super Item> removed) {
+        throw new UnsupportedOperationException("FilteredItemStore is read-only");
+    }
+
+    @Override
+    public void removeNamed(String name, ObjIntConsumer<? super Item> removed) {
+        throw new UnsupportedOperationException("FilteredItemStore is read-only");
+    }
+
+    @Override
+    public ItemStore copyWith(int maxItemWeightInGrammes) {
+        int max = Math.min(maxItemWeightInGrammes, this.maxItemWeightInGrammes);
+        if (this.source.size() == this.limit) {
+            return this.source.copyWith(max);
+        }
+        // Items have been added to source since, which must not be copied
+        ItemStore result = this.source.emptyCopy(size());
+        for (Item it : this) {
+            if (it.getWeightInGrammes() <= max) {
+                result.add(it);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public ItemStore emptyCopy(int capacity) {
+        return this.source.emptyCopy(capacity);
+    }
+
+    @Override
+    public long totalWeight() {
+        long[] sum = new long[1];
+        forEachWeight(w -> sum[0] += w);
+        return sum[0];
+    }
+
+    @Override
+    public void forEachWeight(IntConsumer action) {
+        int max = this.maxItemWeightInGrammes;
+        int[] seen = new int[1];
+        this.source.forEachWeight(w -> {
+            if (w <= max && seen[0] < this.limit) {
+                action.accept(w);
+            }
+            seen[0]++;
+        });
+    }
+
+    @Override
+    public Item greatest() {
+        Item result = null;
+        for (Item it : this) {
+            if (result == null || it.compareTo(result) > 0) {
+                result = it;
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public Iterator<Item> iterator() {
+        Iterator<Item> items = this.source.iterator();
+        return new Iterator<Item>() {
+            private int seen = 0;
+
+            private Item next = advance();
+
+            private Item advance() {
+                while (this.seen < FilteredItemStore.this.limit && items.hasNext()) {
+                    this.seen++;
+                    Item it = items.next();
+                    if (it.getWeightInGrammes() <= FilteredItemStore.this.maxItemWeightInGrammes) {
+                        return it;
+                    }
+                }
+                return null;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return this.next != null;
+            }
+
+            @Override
+            public Item next() {
+                if (this.next == null) {
+                    throw new NoSuchElementException();
+                }
+                Item result = this.next;
+                this.next = advance();
+                return result;
+            }
+        };
+    }
+}
@@ -1,8 +1,16 @@
+import java.io.IOException;
+
 /**
  * An Item has a name and a positive weight in grammes. Objects of this class
  * are immutable: after an object of class Item has been created, one cannot
  * change the values of its attributes. Thus, the class Item has no mutators.
  *
+ * Equal Items can be shared: Item.of and intern() return an Item from a
+ * small cache of recently used Items if there is an equal one, so that
+ * many equal Items take the memory of one and usually compare equal by
+ * reference. The stores that make Items on demand (e.g., for iteration)
+ * use Item.of, so that they do not make a new Item every time.
+ *
  * @author Carsten Fuhs
  */
 public class Item implements Comparable<Item> {
@@ -13,6 +21,18 @@ public class Item implements Comparable<Item> {
     /** The weight of an Item in grammes. Must be greater than 0. */
     private final int weightInGrammes;
 
+    /** The hash code of this Item, computed once by the constructor. */
+    private final int hash;
+
+    /**
+     * The cache used by Item.of and intern(): every slot holds the Item
+     * used last among those whose hash codes select it. It is read and
+     * written without locking; Items are immutable and have only final
+     * fields, so another thread sees either null or a complete Item. A
+     * fixed number of slots bounds the memory it keeps alive.
+     */
+    private static final Item[] CACHE = new Item[1 << 14];
+
     /**
      * Constructs a new Item with given name and weightGrammes.
      *
@@ -32,6 +52,65 @@ public class Item implements Comparable<Item> {
         }
         this.name = name;
         this.weightInGrammes = weightInGrammes;
+        final int prime = 31;
+        this.hash = prime * name.hashCode() + weightInGrammes;
+    }
+
+    /**
+     * Returns an Item with the given name and weightInGrammes, which is
+     * taken from the cache if it holds one; only otherwise is a new Item
+     * made and cached. Repeated calls with equal arguments usually return
+     * the same object, unless many other Items were asked for in between.
+     *
+     * @param name the name of the Item; must not be null
+     * @param weightInGrammes the weight of the Item in grammes; must be
+     *  positive
+     * @return the canonical Item with the given name and weight
+     * @throws NullPointerException if name is null
+     * @throws IllegalArgumentException if weightInGrammes is not positive
+     */
+    public static Item of(String name, int weightInGrammes) {
+        if (name == null) {
+            throw new NullPointerException("name must not be null!");
+        }
+        // the same hash code as the constructor computes, without making
+        // an Item to look it up
+        final int prime = 31;
+        int slot = slot(prime * name.hashCode() + weightInGrammes);
+        Item cached = CACHE[slot];
+        if (cached != null && cached.weightInGrammes == weightInGrammes && cached.name.equals(name)) {
+            return cached;
+        }
+        Item result = new Item(name, weightInGrammes);
+        CACHE[slot] = result;
+        return result;
+    }
+
+    /**
+     * Returns an Item equal to this Item from the cache used by Item.of.
+     * If the cache does not hold one, this Item is cached and returned.
+     *
+     * @return an equal Item, usually the one Item.of returns
+     */
+    public Item intern() {
+        int slot = slot(this.hash);
+        Item cached = CACHE[slot];
+        if (cached != null && cached.hash == this.hash && cached.weightInGrammes == this.weightInGrammes
+                && cached.name.equals(this.name)) {
+            return cached;
+        }
+        CACHE[slot] = this;
+        return this;
+    }
+
+    /**
+     * Returns the slot of CACHE for an Item with the given hash code.
+     *
+     * @param hash the hash code of an Item
+     * @return an index of CACHE
+     */
+    private static int slot(int hash) {
+        return (hash ^ (hash >>> 16)) & (CACHE.length - 1);
     }
 
     /**
@@ -67,6 +146,31 @@ public class Item implements Comparable<Item> {
         return "(" + this.name + ", " + this.weightInGrammes + "g)";
     }
 
+    /**
+     * Writes the String representation of this Item, as returned by
+     * toString(), to out without creating any intermediate Strings.
+     *
+     * @param out where the String representation is written to; must not
+     *  be null
+     * @throws IOException if out throws IOException
+     */
+    void appendTo(Appendable out) throws IOException {
+        out.append('(').append(this.name).append(", ");
+        if (out instanceof StringBuilder) {
+            ((StringBuilder) out).append(this.weightInGrammes);
+        } else {
+            // write the digits one by one, most significant first
+            int divisor = 1;
+            while (divisor <= this.weightInGrammes / 10) {
+                divisor *= 10;
+            }
+            for (; divisor > 0; divisor /= 10) {
+                out.append((char) ('0' + this.weightInGrammes / divisor % 10));
+            }
+        }
+        out.append("g)");
+    }
+
     /**
      * Returns the hash code of this Item. The hash code of an item is
      * based on its name and its weight in grammes.
@@ -75,9 +179,7 @@ public class Item implements Comparable<Item> {
      */
     @Override
     public int hashCode() {
-        final int prime = 31;
-        // this implementation relies on the name attribute being non-null
-        return prime * this.name.hashCode() + this.weightInGrammes;
+        return this.hash;
     }
 
     /**
@@ -101,8 +203,10 @@ public class Item implements Comparable<Item> {
             return false;
         }
         Item other = (Item) obj;
+        // different hash codes rule out equality without comparing names;
         // this implementation relies on the name attribute being non-null
-        return this.name.equals(other.name)
+        return this.hash == other.hash
+             && this.name.equals(other.name)
              && this.weightInGrammes == other.weightInGrammes;
     }
 
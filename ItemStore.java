@@ -0,0 +1,236 @@
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+import java.util.function.ObjIntConsumer;
+
+/**
+ * An ItemStore holds the Items of a Smartshelf. The Smartshelf checks its
+ * arguments (e.g., it never passes null Items to its ItemStore) and keeps
+ * track of aggregates such as the total weight; the ItemStore only decides
+ * how the Items are laid out in memory. Implementations are not thread-safe.
+ *
+ * Iteration order is up to the implementation, matching the contract of
+ * Smartshelf.toString().
+ *
+ * @author sobia
+ */
+interface ItemStore extends Iterable<Item> {
+
+    /**
+     * Returns the number of Items in this ItemStore.
+     *
+     * @return the number of Items in this ItemStore
+     */
+    int size();
+
+    /**
+     * Adds an Item to this ItemStore.
+     *
+     * @param item the Item to be added; must not be null
+     */
+    void add(Item item);
+
+    /**
+     * Makes room for at least minCapacity Items, if this kind of ItemStore
+     * allocates room for its Items in advance; does nothing otherwise.
+     *
+     * @param minCapacity the number of Items to make room for
+     */
+    void ensureCapacity(int minCapacity);
+
+    /**
+     * Returns the number of Items this ItemStore has room for before it has
+     * to grow. ItemStores that do not allocate room in advance return
+     * size(). ListItemStore can only estimate it, so the result is meant
+     * for reporting, not for decisions.
+     *
+     * @return the number of Items this ItemStore has room for
+     */
+    default int capacity() {
+        return size();
+    }
+
+    /**
+     * Returns whether add only appends to this ItemStore, i.e., whether the
+     * Items that are already there stay where they are in iteration order
+     * when Items are added. Those Items can then still be read, e.g., by a
+     * FilteredItemStore, while Items are added.
+     *
+     * @return whether add only appends
+     */
+    default boolean addAppends() {
+        return false;
+    }
+
+    /**
+     * Removes all Items from this ItemStore.
+     */
+    void clear();
+
+    /**
+     * Removes exactly those Items whose weight in grammes is greater than
+     * the specified maximum weight and passes each removed Item to removed,
+     * together with the number of times it was removed. ItemStores that
+     * keep equal Items only once pass each of them once, with its count;
+     * others may pass equal Items several times.
+     *
+     * @param maxItemWeightInGrammes the maximum weight in grammes for the
+     *  Items that are kept
+     * @param removed receives every removed Item and how often it was
+     *  removed (at least 1)
+     */
+    void removeHeavierThan(int maxItemWeightInGrammes, ObjIntConsumer<? super Item> removed);
+
+    /**
+     * Removes exactly those Items whose weight in grammes is greater than
+     * the specified maximum weight and passes the weights of the removed
+     * Items to removed, as removeHeavierThan passes the Items. ItemStores
+     * that keep the weights in a column of their own do this without making
+     * any Item objects.
+     *
+     * @param maxItemWeightInGrammes the maximum weight in grammes for the
+     *  Items that are kept
+     * @param removed receives the weights of the removed Items
+     */
+    default void removeWeightsHeavierThan(int maxItemWeightInGrammes, RemovedWeights removed) {
+        removeHeavierThan(maxItemWeightInGrammes, (it, count) -> removed.accept(it.getWeightInGrammes(), count));
+    }
+
+    /**
+     * Removes exactly those Items whose name equals the specified name and
+     * passes each removed Item to removed, together with the number of
+     * times it was removed, as removeHeavierThan does.
+     *
+     * @param name the name of the Items to be removed; must not be null
+     * @param removed receives every removed Item and how often it was
+     *  removed (at least 1)
+     */
+    void removeNamed(String name, ObjIntConsumer<? super Item> removed);
+
+    /**
+     * Returns whether this ItemStore contains an Item with the given name,
+     * without modifying it.
+     *
+     * @param name the name to look for; must not be null
+     * @return whether an Item has the given name
+     */
+    default boolean containsName(String name) {
+        for (Item it : this) {
+            if (it.getName().equals(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns a new ItemStore of the same kind as this one with exactly those
+     * Items of this ItemStore whose weight is less than or equal to the
+     * specified maximum weight. Does not modify this ItemStore.
+     *
+     * @param maxItemWeightInGrammes the maximum weight in grammes for the
+     *  Items in the new ItemStore
+     * @return a new, independent ItemStore with the matching Items
+     */
+    ItemStore copyWith(int maxItemWeightInGrammes);
+
+    /**
+     * Returns a new, empty ItemStore of the same kind as this one, with room
+     * for capacity Items where this applies. Unlike copyWith, this does not
+     * look at the Items of this ItemStore.
+     *
+     * @param capacity the number of Items to make room for
+     * @return a new, independent, empty ItemStore
+     */
+    ItemStore emptyCopy(int capacity);
+
+    /**
+     * Computes the total weight in grammes of the Items in this ItemStore.
+     *
+     * @return the total weight of the Items in this ItemStore
+     */
+    long totalWeight();
+
+    /**
+     * Computes the greatest Item in this ItemStore wrt the natural ordering
+     * of Item.
+     *
+     * @return the greatest Item; null if this ItemStore is empty
+     */
+    Item greatest();
+
+    /**
+     * Passes the weight of every Item in this ItemStore to action, in
+     * iteration order. ItemStores that keep the weights in a column of
+     * their own do this without making any Item objects.
+     *
+     * @param action receives every weight in grammes
+     */
+    default void forEachWeight(IntConsumer action) {
+        for (Item it : this) {
+            action.accept(it.getWeightInGrammes());
+        }
+    }
+
+    /**
+     * Performs action for every Item in this ItemStore whose weight is
+     * between minWeightInGrammes and maxWeightInGrammes (both inclusive),
+     * in iteration order. ItemStores that keep their Items ordered by
+     * weight only visit the matching range.
+     *
+     * @param minWeightInGrammes the minimum weight in grammes
+     * @param maxWeightInGrammes the maximum weight in grammes
+     * @param action the action to perform
+     */
+    default void forEachBetween(int minWeightInGrammes, int maxWeightInGrammes,
+            Consumer<? super Item> action) {
+        for (Item it : this) {
+            int w = it.getWeightInGrammes();
+            if (w >= minWeightInGrammes && w <= maxWeightInGrammes) {
+                action.accept(it);
+            }
+        }
+    }
+
+    /**
+     * Passes the weight of every Item in this ItemStore that is between
+     * minWeightInGrammes and maxWeightInGrammes (both inclusive) to action,
+     * in iteration order, like forEachWeight.
+     *
+     * @param minWeightInGrammes the minimum weight in grammes
+     * @param maxWeightInGrammes the maximum weight in grammes
+     * @param action receives every matching weight in grammes
+     */
+    default void forEachWeightBetween(int minWeightInGrammes, int maxWeightInGrammes,
+            IntConsumer action) {
+        forEachWeight(w -> {
+            if (w >= minWeightInGrammes && w <= maxWeightInGrammes) {
+                action.accept(w);
+            }
+        });
+    }
+
+    /**
+     * Releases resources held by this ItemStore outside the Java heap. The
+     * ItemStore must not be used afterwards. Does nothing for ItemStores
+     * that only use the heap.
+     */
+    default void close() {
+        // nothing to release
+    }
+
+    /**
+     * Receives the weights of Items removed by removeWeightsHeavierThan.
+     */
+    @FunctionalInterface
+    interface RemovedWeights {
+
+        /**
+         * Accepts removed Items of the same weight.
+         *
+         * @param weightInGrammes the weight of the removed Items
+         * @param count the number of removed Items of that weight; at
+         *  least 1
+         */
+        void accept(int weightInGrammes, int count);
+    }
+}
@@ -0,0 +1,164 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.function.Consumer;
+import java.util.function.ObjIntConsumer;
+
+/**
+ * An ItemStore that keeps one reference to an Item object per stored Item
+ * in an ArrayList. This is the default storage of a Smartshelf.
+ *
+ * @author sobia
+ */
+class ListItemStore implements ItemStore {
+
+    private final ArrayList<Item> items;
+
+    /**
+     * An estimate of the length of the array backing items, which ArrayList
+     * does not reveal. It is tracked here by following the growth policy
+     * of the JDK's ArrayList (grow by half, or to the requested capacity if
+     * that is more). That policy is not part of the contract of ArrayList
+     * and may differ between JDK versions, so this is only an estimate and
+     * is only used for reporting (see capacity()).
+     */
+    private int capacity;
+
+    /**
+     * Constructs a new ListItemStore without any Items.
+     *
+     * @param capacity the number of Items that can be stored before the
+     *  list has to grow; must not be negative
+     */
+    ListItemStore(int capacity) {
+        this.items = new ArrayList<>(capacity);
+        this.capacity = capacity;
+    }
+
+    @Override
+    public int size() {
+        return this.items.size();
+    }
+
+    @Override
+    public void add(Item item) {
+        if (this.items.size() == this.capacity) {
+            grow(this.capacity + 1);
+        }
+        this.items.add(item);
+    }
+
+    @Override
+    public void ensureCapacity(int minCapacity) {
+        this.items.ensureCapacity(minCapacity);
+        if (minCapacity > this.capacity) {
+            grow(minCapacity);
+        }
+    }
+
+    /**
+     * Returns an estimate of the number of Items the list has room for; see
+     * the field capacity.
+     */
+    @Override
+    public int capacity() {
+        return this.capacity;
+    }
+
+    private void grow(int minCapacity) {
+        this.capacity = (int) Math.min(Integer.MAX_VALUE - 8,
+            Math.max(minCapacity, this.capacity + (long) (this.capacity >> 1)));
+    }
+
+    @Override
+    public boolean addAppends() {
+        return true;
+    }
+
+    @Override
+    public void clear() {
+        this.items.clear();
+    }
+
+    @Override
+    public void removeHeavierThan(int maxItemWeightInGrammes, ObjIntConsumer<? super Item> removed) {
+        this.items.removeIf(it -> {
+            if (it.getWeightInGrammes() > maxItemWeightInGrammes) {
+                removed.accept(it, 1);
+                return true;
+            }
+            return false;
+        });
+    }
+
+    @Override
+    public void removeNamed(String name, ObjIntConsumer<? super Item> removed) {
+        this.items.removeIf(it -> {
+            if (it.getName().equals(name)) {
+                removed.accept(it, 1);
+                return true;
+            }
+            return false;
+        });
+    }
+
+    @Override
+    public ItemStore copyWith(int maxItemWeightInGrammes) {
+        int count = 0;
+        for (Item it : this.items) {
+            if (it.getWeightInGrammes() <= maxItemWeightInGrammes) {
+                count++;
+            }
+        }
+        ListItemStore result = new ListItemStore(count);
+        for (Item it : this.items) {
+            if (it.getWeightInGrammes() <= maxItemWeightInGrammes) {
+                result.items.add(it);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public ItemStore emptyCopy(int capacity) {
+        return new ListItemStore(capacity);
+    }
+
+    @Override
+    public long totalWeight() {
+        long sum = 0;
+        for (Item it : this.items) {
+            sum += it.getWeightInGrammes();
+        }
+        return sum;
+    }
+
+    @Override
+    public Item greatest() {
+        return this.items.isEmpty() ? null : Collections.max(this.items);
+    }
+
+    @Override
+    public Iterator<Item> iterator() {
+        // by position rather than with the iterator of the list, which
+        // fails once Items have been added, so that views of a Smartshelf
+        // (see addAppends) can be iterated while it is being added to
+        return new Iterator<Item>() {
+            private int next = 0;
+
+            @Override
+            public boolean hasNext() {
+                return this.next < ListItemStore.this.items.size();
+            }
+
+            @Override
+            public Item next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return ListItemStore.this.items.get(this.next++);
+            }
+        };
+    }
+}
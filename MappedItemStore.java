@@ -0,0 +1,198 @@
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.function.Consumer;
+import java.util.function.ObjIntConsumer;
+import java.util.function.IntConsumer;
+
+/**
+ * A read-only ItemStore that reads its Items from a memory-mapped snapshot
+ * file in the format described in SmartshelfSnapshot. Nothing is copied
+ * when the store is created; weights are read from the file when needed,
+ * and every name is decoded at most once.
+ *
+ * @author sobia
+ */
+class MappedItemStore implements ItemStore {
+
+    private final ByteBuffer data;
+
+    private final int size;
+
+    private final long totalWeight;
+
+    /** Where the weight column starts in data. */
+    private final int weightsStart;
+
+    /** Where the name id column starts in data. */
+    private final int nameIdsStart;
+
+    /** Where the name offsets start in data. */
+    private final int nameOffsetsStart;
+
+    /** Where the name bytes start in data. */
+    private final int nameBytesStart;
+
+    /** The names decoded so far, by id; null for names not decoded yet. */
+    private final String[] names;
+
+    /**
+     * Constructs a new MappedItemStore for a snapshot whose header has
+     * already been checked.
+     *
+     * @param data the contents of the snapshot file
+     */
+    MappedItemStore(ByteBuffer data) {
+        this.data = data;
+        this.size = data.getInt(8);
+        this.names = new String[data.getInt(12)];
+        this.totalWeight = data.getLong(16);
+        this.weightsStart = SmartshelfSnapshot.HEADER_SIZE;
+        this.nameIdsStart = this.weightsStart + 4 * this.size;
+        this.nameOffsetsStart = this.nameIdsStart + 4 * this.size;
+        this.nameBytesStart = this.nameOffsetsStart + 4 * (this.names.length + 1);
+    }
+
+    @Override
+    public int size() {
+        return this.size;
+    }
+
+    @Override
+    public void add(Item item) {
+        throw new UnsupportedOperationException("MappedItemStore is read-only");
+    }
+
+    @Override
+    public void ensureCapacity(int minCapacity) {
+        throw new UnsupportedOperationException("MappedItemStore is read-only");
+    }
+
+    @Override
+    public void clear() {
+        throw new UnsupportedOperationException("MappedItemStore is read-only");
+    }
+
+    @Override
+    public void removeHeavierThan(int maxItemWeightInGrammes, ObjIntConsumer<? super Item> removed) {
+        throw new UnsupportedOperationException("MappedItemStore is read-only");
+    }
+
+    @Override
+    public void removeNamed(String name, ObjIntConsumer<? super Item> removed) {
+        throw new UnsupportedOperationException("MappedItemStore is read-only");
+    }
+
+    /**
+     * Returns a new ColumnarItemStore with the matching Items.
+     */
+    @Override
+    public ItemStore copyWith(int maxItemWeightInGrammes) {
+        int count = 0;
+        for (int i = 0; i < this.size; i++) {
+            if (weightAt(i) <= maxItemWeightInGrammes) {
+                count++;
+            }
+        }
+        NameDictionary dictionary = new NameDictionary();
+        // maps the name ids of the snapshot to those of dictionary
+        int[] ids = new int[this.names.length];
+        ColumnarItemStore result = new ColumnarItemStore(dictionary, count);
+        for (int i = 0; i < this.size; i++) {
+            int weight = weightAt(i);
+            if (weight <= maxItemWeightInGrammes) {
+                int nameId = nameIdAt(i);
+                if (ids[nameId] == 0) {
+                    ids[nameId] = dictionary.idOf(nameOf(nameId)) + 1; // 0 means unknown
+                }
+                result.add(weight, ids[nameId] - 1);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public ItemStore emptyCopy(int capacity) {
+        return new ColumnarItemStore(capacity);
+    }
+
+    @Override
+    public long totalWeight() {
+        return this.totalWeight;
+    }
+
+    @Override
+    public Item greatest() {
+        if (this.size == 0) {
+            return null;
+        }
+        int best = 0;
+        for (int i = 1; i < this.size; i++) {
+            if (weightAt(i) > weightAt(best)
+                    || weightAt(i) == weightAt(best)
+                       && nameOf(nameIdAt(i)).compareTo(nameOf(nameIdAt(best))) > 0) {
+                best = i;
+            }
+        }
+        return itemAt(best);
+    }
+
+    @Override
+    public void forEachWeight(IntConsumer action) {
+        for (int i = 0; i < this.size; i++) {
+            action.accept(weightAt(i));
+        }
+    }
+
+    @Override
+    public Iterator<Item> iterator() {
+        return new Iterator<Item>() {
+            private int next = 0;
+
+            @Override
+            public boolean hasNext() {
+                return this.next < MappedItemStore.this.size;
+            }
+
+            @Override
+            public Item next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return itemAt(this.next++);
+            }
+        };
+    }
+
+    private int weightAt(int i) {
+        return this.data.getInt(this.weightsStart + 4 * i);
+    }
+
+    private int nameIdAt(int i) {
+        return this.data.getInt(this.nameIdsStart + 4 * i);
+    }
+
+    private Item itemAt(int i) {
+        return Item.of(nameOf(nameIdAt(i)), weightAt(i));
+    }
+
+    /**
+     * Returns the name with the given id, decoding it on first use.
+     *
+     * @param id the id of a name in the snapshot
+     * @return the name with the given id
+     */
+    private String nameOf(int id) {
+        String name = this.names[id];
+        if (name == null) {
+            int start = this.data.getInt(this.nameOffsetsStart + 4 * id);
+            int end = this.data.getInt(this.nameOffsetsStart + 4 * (id + 1));
+            byte[] bytes = new byte[end - start];
+            this.data.get(this.nameBytesStart + start, bytes);
+            name = new String(bytes, StandardCharsets.UTF_8);
+            this.names[id] = name;
+        }
+        return name;
+    }
+}
@@ -0,0 +1,119 @@
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.ObjIntConsumer;
+
+/**
+ * An ItemStore that keeps every distinct Item (wrt Item.equals) once
+ * together with the number of times it has been added. For Smartshelfs
+ * with many repeated Items, memory use and the cost of scans drop by
+ * roughly the number of repetitions; so does the cost of removals, which
+ * report every removed Item once together with its count.
+ *
+ * @author sobia
+ */
+class MultisetItemStore implements ItemStore {
+
+    /** Maps every stored Item to the number of times it is stored. */
+    private final Map<Item, Integer> counts;
+
+    private int size;
+
+    /**
+     * Constructs a new MultisetItemStore without any Items.
+     */
+    MultisetItemStore() {
+        this.counts = new HashMap<>();
+    }
+
+    @Override
+    public int size() {
+        return this.size;
+    }
+
+    @Override
+    public void add(Item item) {
+        this.counts.merge(item, 1, Integer::sum);
+        this.size++;
+    }
+
+    @Override
+    public void ensureCapacity(int minCapacity) {
+        // nothing to allocate in advance
+    }
+
+    @Override
+    public void clear() {
+        this.counts.clear();
+        this.size = 0;
+    }
+
+    @Override
+    public void removeHeavierThan(int maxItemWeightInGrammes, ObjIntConsumer<? super Item> removed) {
+        Iterator<Map.Entry<Item, Integer>> entries = this.counts.entrySet().iterator();
+        while (entries.hasNext()) {
+            Map.Entry<Item, Integer> e = entries.next();
+            if (e.getKey().getWeightInGrammes() > maxItemWeightInGrammes) {
+                removed.accept(e.getKey(), e.getValue());
+                this.size -= e.getValue();
+                entries.remove();
+            }
+        }
+    }
+
+    @Override
+    public void removeNamed(String name, ObjIntConsumer<? super Item> removed) {
+        Iterator<Map.Entry<Item, Integer>> entries = this.counts.entrySet().iterator();
+        while (entries.hasNext()) {
+            Map.Entry<Item, Integer> e = entries.next();
+            if (e.getKey().getName().equals(name)) {
+                removed.accept(e.getKey(), e.getValue());
+                this.size -= e.getValue();
+                entries.remove();
+            }
+        }
+    }
+
+    @Override
+    public ItemStore copyWith(int maxItemWeightInGrammes) {
+        MultisetItemStore result = new MultisetItemStore();
+        for (Map.Entry<Item, Integer> e : this.counts.entrySet()) {
+            if (e.getKey().getWeightInGrammes() <= maxItemWeightInGrammes) {
+                result.counts.put(e.getKey(), e.getValue());
+                result.size += e.getValue();
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public ItemStore emptyCopy(int capacity) {
+        return new MultisetItemStore();
+    }
+
+    @Override
+    public long totalWeight() {
+        long sum = 0;
+        for (Map.Entry<Item, Integer> e : this.counts.entrySet()) {
+            sum += (long) e.getKey().getWeightInGrammes() * e.getValue();
+        }
+        return sum;
+    }
+
+    @Override
+    public Item greatest() {
+        Item result = null;
+        for (Item it : this.counts.keySet()) {
+            if (result == null || it.compareTo(result) > 0) {
+                result = it;
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public Iterator<Item> iterator() {
+        return new CountingIterator(this.counts);
+    }
+}
@@ -0,0 +1,103 @@
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A NameDictionary assigns a dense int id to every distinct Item name it is
+ * asked about, so that stores can keep a name as an int instead of a
+ * reference.
+ *
+ * Every store has a NameDictionary of its own, so that the dictionary can
+ * be cleared together with the store and names of Items that are gone are
+ * forgotten. Stores copying Items from each other translate the ids (see
+ * translate). Like the stores, a NameDictionary is not thread-safe.
+ *
+ * @author sobia
+ */
+class NameDictionary {
+
+    private final Map<String, Integer> ids = new HashMap<>();
+
+    private String[] names = new String[16];
+
+    /**
+     * Returns the number of names in this NameDictionary, which is one more
+     * than the greatest id.
+     *
+     * @return the number of names in this NameDictionary
+     */
+    int size() {
+        return this.ids.size();
+    }
+
+    /**
+     * Returns the id of name, assigning a new one if name has not been seen
+     * by this NameDictionary before.
+     *
+     * @param name must not be null
+     * @return the id of name; always at least 0
+     */
+    int idOf(String name) {
+        Integer id = this.ids.get(name);
+        if (id != null) {
+            return id;
+        }
+        int newId = this.ids.size();
+        if (newId == this.names.length) {
+            this.names = Arrays.copyOf(this.names, 2 * newId);
+        }
+        this.names[newId] = name;
+        this.ids.put(name, newId);
+        return newId;
+    }
+
+    /**
+     * Returns the id of name without assigning a new one.
+     *
+     * @param name must not be null
+     * @return the id of name; -1 if name has not been seen by this
+     *  NameDictionary
+     */
+    int find(String name) {
+        Integer id = this.ids.get(name);
+        return id == null ? -1 : id;
+    }
+
+    /**
+     * Returns the name with the given id.
+     *
+     * @param id an id returned by idOf
+     * @return the name with the given id
+     */
+    String nameOf(int id) {
+        return this.names[id];
+    }
+
+    /**
+     * Returns the id that the name with the given id has in target,
+     * assigning one there if needed. Every distinct name is only looked up
+     * once in target, so copying the name ids of many Items costs little
+     * more than copying the ids themselves.
+     *
+     * @param id an id returned by idOf
+     * @param target the NameDictionary the id is translated to
+     * @param translated the ids translated so far, plus 1 (0 for ids that
+     *  have not been translated yet); must have size() entries and be used
+     *  for the same target only
+     * @return the id of the same name in target
+     */
+    int translate(int id, NameDictionary target, int[] translated) {
+        if (translated[id] == 0) {
+            translated[id] = target.idOf(this.names[id]) + 1;
+        }
+        return translated[id] - 1;
+    }
+
+    /**
+     * Forgets all names.
+     */
+    void clear() {
+        this.ids.clear();
+        this.names = new String[16];
+    }
+}
@@ -0,0 +1,88 @@
+import java.util.HashMap;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+/**
+ * A NameIndex counts the Items of a Smartshelf by name. Looking up the
+ * count of a name takes constant time; the distinct names are also kept
+ * sorted, so that the names with a given prefix can be found in
+ * O(log m + k) time for m distinct names and k results.
+ *
+ * @author sobia
+ */
+class NameIndex {
+
+    /** Maps every name to its positive number of Items. */
+    private final Map<String, int[]> counts = new HashMap<>();
+
+    /** The keys of counts, sorted. */
+    private final NavigableSet<String> names = new TreeSet<>();
+
+    /**
+     * Counts an added Item.
+     *
+     * @param name the name of the Item
+     */
+    void add(String name) {
+        int[] count = this.counts.get(name);
+        if (count == null) {
+            this.counts.put(name, new int[] { 1 });
+            this.names.add(name);
+        } else {
+            count[0]++;
+        }
+    }
+
+    /**
+     * Uncounts removed Items with the same name.
+     *
+     * @param name the name of the Items; must have been counted
+     * @param n the number of removed Items; at most their count
+     */
+    void remove(String name, int n) {
+        int[] count = this.counts.get(name);
+        count[0] -= n;
+        if (count[0] == 0) {
+            this.counts.remove(name);
+            this.names.remove(name);
+        }
+    }
+
+    /**
+     * Forgets all counted Items.
+     */
+    void clear() {
+        this.counts.clear();
+        this.names.clear();
+    }
+
+    /**
+     * Returns the number of Items with the given name.
+     *
+     * @param name the name to look up
+     * @return the number of Items with the given name
+     */
+    int count(String name) {
+        int[] count = this.counts.get(name);
+        return count == null ? 0 : count[0];
+    }
+
+    /**
+     * Returns the distinct names starting with prefix.
+     *
+     * @param prefix must not be null
+     * @return a new sorted set with the names starting with prefix
+     */
+    SortedSet<String> namesStartingWith(String prefix) {
+        SortedSet<String> result = new TreeSet<>();
+        for (String name : this.names.tailSet(prefix, true)) {
+            if (!name.startsWith(prefix)) {
+                break;
+            }
+            result.add(name);
+        }
+        return result;
+    }
+}
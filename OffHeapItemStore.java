@@ -0,0 +1,396 @@
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.function.Consumer;
+import java.util.function.ObjIntConsumer;
+import java.util.function.IntConsumer;
+
+/**
+ * An ItemStore that keeps the weights of its Items and the ids of their
+ * names in direct buffers, i.e., outside the Java heap. Only the distinct
+ * names are kept on the heap, in a NameDictionary of this store, which is
+ * cleared with it. However many Items are stored, the heap only holds a
+ * few objects for them, so garbage collection does not get slower as the
+ * store grows.
+ *
+ * The native memory is owned by this store until close() is called, which
+ * frees it right away; any use of the store after that throws
+ * IllegalStateException. Buffers replaced when the store grows are freed
+ * right away, too. Freeing direct buffers explicitly needs
+ * sun.misc.Unsafe.invokeCleaner (module jdk.unsupported); on a JDK without
+ * it, the memory is only returned when the garbage collector finds the
+ * buffers unreachable, which may take long if the heap hardly changes.
+ *
+ * @author sobia
+ */
+class OffHeapItemStore implements ItemStore {
+
+    /** The least capacity the buffers grow to when they are full. */
+    private static final int MIN_GROWTH = 16;
+
+    /**
+     * The greatest capacity of the buffers, whose size in bytes has to be
+     * an int.
+     */
+    static final int MAX_CAPACITY = Integer.MAX_VALUE / Integer.BYTES;
+
+    /**
+     * Frees the native memory of a direct ByteBuffer right away; null if
+     * this JDK does not allow that.
+     */
+    private static final MethodHandle FREE = findFree();
+
+    private NameDictionary names;
+
+    /** The memory of weights, kept for freeing it; null after close(). */
+    private ByteBuffer weightBytes;
+
+    /** The memory of nameIds, kept for freeing it; null after close(). */
+    private ByteBuffer nameIdBytes;
+
+    /** The weight column; null after close(). */
+    private IntBuffer weights;
+
+    /** The name id column; null after close(). */
+    private IntBuffer nameIds;
+
+    private int size;
+
+    /**
+     * Constructs a new OffHeapItemStore without any Items.
+     *
+     * @param names the dictionary for the names of the Items, which must
+     *  not be used by any other store; must not be null
+     * @param capacity the number of Items that can be stored before the
+     *  buffers have to grow; must not be negative
+     */
+    OffHeapItemStore(NameDictionary names, int capacity) {
+        this.names = names;
+        this.weightBytes = allocate(capacity);
+        this.nameIdBytes = allocate(capacity);
+        this.weights = this.weightBytes.asIntBuffer();
+        this.nameIds = this.nameIdBytes.asIntBuffer();
+    }
+
+    @Override
+    public int size() {
+        checkOpen();
+        return this.size;
+    }
+
+    @Override
+    public void add(Item item) {
+        checkOpen();
+        if (this.size == this.weights.capacity()) {
+            // doubling up to MAX_CAPACITY in long arithmetic, so that it
+            // does not overflow; beyond that, ensureCapacity fails
+            long doubled = Math.min(MAX_CAPACITY, Math.max(MIN_GROWTH, 2L * this.size));
+            ensureCapacity((int) Math.max(this.size + 1L, doubled));
+        }
+        this.weights.put(this.size, item.getWeightInGrammes());
+        this.nameIds.put(this.size, this.names.idOf(item.getName()));
+        this.size++;
+    }
+
+    @Override
+    public int capacity() {
+        checkOpen();
+        return this.weights.capacity();
+    }
+
+    @Override
+    public void ensureCapacity(int minCapacity) {
+        checkOpen();
+        if (minCapacity > this.weights.capacity()) {
+            ByteBuffer newWeightBytes = allocate(minCapacity);
+            ByteBuffer newNameIdBytes = allocate(minCapacity);
+            IntBuffer newWeights = newWeightBytes.asIntBuffer().put(0, this.weights, 0, this.size);
+            IntBuffer newNameIds = newNameIdBytes.asIntBuffer().put(0, this.nameIds, 0, this.size);
+            free(this.weightBytes);
+            free(this.nameIdBytes);
+            this.weightBytes = newWeightBytes;
+            this.nameIdBytes = newNameIdBytes;
+            this.weights = newWeights;
+            this.nameIds = newNameIds;
+        }
+    }
+
+    @Override
+    public boolean addAppends() {
+        return true;
+    }
+
+    @Override
+    public void clear() {
+        checkOpen();
+        this.size = 0;
+        this.names.clear();
+    }
+
+    @Override
+    public void removeHeavierThan(int maxItemWeightInGrammes, ObjIntConsumer<? super Item> removed) {
+        checkOpen();
+        int kept = 0;
+        for (int i = 0; i < this.size; i++) {
+            int weight = this.weights.get(i);
+            if (weight <= maxItemWeightInGrammes) {
+                this.weights.put(kept, weight);
+                this.nameIds.put(kept, this.nameIds.get(i));
+                kept++;
+            } else {
+                removed.accept(itemAt(i), 1);
+            }
+        }
+        this.size = kept;
+        forgetUnusedNames();
+    }
+
+    @Override
+    public void removeWeightsHeavierThan(int maxItemWeightInGrammes, RemovedWeights removed) {
+        checkOpen();
+        int kept = 0;
+        for (int i = 0; i < this.size; i++) {
+            int weight = this.weights.get(i);
+            if (weight <= maxItemWeightInGrammes) {
+                this.weights.put(kept, weight);
+                this.nameIds.put(kept, this.nameIds.get(i));
+                kept++;
+            } else {
+                removed.accept(weight, 1);
+            }
+        }
+        this.size = kept;
+        forgetUnusedNames();
+    }
+
+    @Override
+    public void removeNamed(String name, ObjIntConsumer<? super Item> removed) {
+        checkOpen();
+        int id = this.names.find(name);
+        if (id < 0) {
+            return;
+        }
+        int kept = 0;
+        for (int i = 0; i < this.size; i++) {
+            int nameId = this.nameIds.get(i);
+            if (nameId != id) {
+                this.weights.put(kept, this.weights.get(i));
+                this.nameIds.put(kept, nameId);
+                kept++;
+            } else {
+                removed.accept(itemAt(i), 1);
+            }
+        }
+        this.size = kept;
+        forgetUnusedNames();
+    }
+
+    /**
+     * Rebuilds the NameDictionary with only the names that are still used
+     * if it has many more names than there are Items, as ColumnarItemStore
+     * does.
+     */
+    private void forgetUnusedNames() {
+        if (this.names.size() <= 2 * this.size + MIN_GROWTH) {
+            return;
+        }
+        NameDictionary used = new NameDictionary();
+        int[] translated = new int[this.names.size()];
+        for (int i = 0; i < this.size; i++) {
+            this.nameIds.put(i, this.names.translate(this.nameIds.get(i), used, translated));
+        }
+        this.names = used;
+    }
+
+    @Override
+    public boolean containsName(String name) {
+        checkOpen();
+        int id = this.names.find(name);
+        if (id < 0) {
+            return false;
+        }
+        for (int i = 0; i < this.size; i++) {
+            if (this.nameIds.get(i) == id) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns a new OffHeapItemStore with the matching Items, which has to
+     * be closed separately.
+     */
+    @Override
+    public ItemStore copyWith(int maxItemWeightInGrammes) {
+        checkOpen();
+        int count = 0;
+        for (int i = 0; i < this.size; i++) {
+            if (this.weights.get(i) <= maxItemWeightInGrammes) {
+                count++;
+            }
+        }
+        OffHeapItemStore result = new OffHeapItemStore(new NameDictionary(), count);
+        int[] translated = new int[this.names.size()];
+        for (int i = 0; i < this.size; i++) {
+            int weight = this.weights.get(i);
+            if (weight <= maxItemWeightInGrammes) {
+                result.weights.put(result.size, weight);
+                result.nameIds.put(result.size, this.names.translate(this.nameIds.get(i), result.names, translated));
+                result.size++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns a new, empty OffHeapItemStore, which has to be closed
+     * separately.
+     */
+    @Override
+    public ItemStore emptyCopy(int capacity) {
+        checkOpen();
+        return new OffHeapItemStore(new NameDictionary(), capacity);
+    }
+
+    @Override
+    public long totalWeight() {
+        checkOpen();
+        long sum = 0;
+        for (int i = 0; i < this.size; i++) {
+            sum += this.weights.get(i);
+        }
+        return sum;
+    }
+
+    @Override
+    public Item greatest() {
+        checkOpen();
+        if (this.size == 0) {
+            return null;
+        }
+        int best = 0;
+        for (int i = 1; i < this.size; i++) {
+            int weight = this.weights.get(i);
+            int bestWeight = this.weights.get(best);
+            if (weight > bestWeight
+                    || weight == bestWeight
+                       && this.names.nameOf(this.nameIds.get(i))
+                              .compareTo(this.names.nameOf(this.nameIds.get(best))) > 0) {
+                best = i;
+            }
+        }
+        return itemAt(best);
+    }
+
+    @Override
+    public void forEachWeight(IntConsumer action) {
+        checkOpen();
+        for (int i = 0; i < this.size; i++) {
+            action.accept(this.weights.get(i));
+        }
+    }
+
+    @Override
+    public Iterator<Item> iterator() {
+        checkOpen();
+        return new Iterator<Item>() {
+            private int next = 0;
+
+            @Override
+            public boolean hasNext() {
+                return this.next < size();
+            }
+
+            @Override
+            public Item next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return itemAt(this.next++);
+            }
+        };
+    }
+
+    /**
+     * Frees the native memory of this store. Does nothing if this store has
+     * already been closed.
+     */
+    @Override
+    public void close() {
+        if (this.weights == null) {
+            return;
+        }
+        // no reference to the buffers may remain once they are freed
+        ByteBuffer w = this.weightBytes;
+        ByteBuffer n = this.nameIdBytes;
+        this.weightBytes = null;
+        this.nameIdBytes = null;
+        this.weights = null;
+        this.nameIds = null;
+        this.size = 0;
+        free(w);
+        free(n);
+    }
+
+    private Item itemAt(int i) {
+        return Item.of(this.names.nameOf(this.nameIds.get(i)), this.weights.get(i));
+    }
+
+    private void checkOpen() {
+        if (this.weights == null) {
+            throw new IllegalStateException("OffHeapItemStore has been closed");
+        }
+    }
+
+    /**
+     * Allocates a direct buffer for capacity ints in native byte order.
+     *
+     * @param capacity the number of ints; must not be negative
+     * @return a new ByteBuffer outside the Java heap
+     */
+    private static ByteBuffer allocate(int capacity) {
+        if (capacity > MAX_CAPACITY) {
+            throw new IllegalStateException("OffHeapItemStore cannot hold more than "
+                + MAX_CAPACITY + " Items");
+        }
+        return ByteBuffer.allocateDirect(Integer.BYTES * capacity).order(ByteOrder.nativeOrder());
+    }
+
+    /**
+     * Frees the native memory of a buffer made by allocate right away, if
+     * this JDK allows that; otherwise, it is freed when the buffer is
+     * garbage collected. The buffer must not be used afterwards.
+     *
+     * @param buffer a buffer made by allocate
+     */
+    private static void free(ByteBuffer buffer) {
+        if (FREE != null) {
+            try {
+                FREE.invokeExact(buffer);
+            } catch (Throwable e) {
+                throw new IllegalStateException("Could not free an OffHeapItemStore buffer", e);
+            }
+        }
+    }
+
+    private static MethodHandle findFree() {
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            return MethodHandles.lookup()
+                .findVirtual(unsafeClass, "invokeCleaner", MethodType.methodType(void.class, ByteBuffer.class))
+                .bindTo(theUnsafe.get(null));
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // e.g., without the module jdk.unsupported
+            return null;
+        }
+    }
+}
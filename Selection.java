@@ -0,0 +1,102 @@
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Selection algorithms: finding the element of a given rank without
+ * sorting. Quickselect with random pivots takes expected linear time.
+ *
+ * @author sobia
+ */
+final class Selection {
+
+    private Selection() {
+        // only class methods
+    }
+
+    /**
+     * Rearranges a so that a[rank] is the Item that would be there if a
+     * were sorted by the natural ordering of Item, and returns it.
+     *
+     * @param a the Items; must not contain null
+     * @param rank an index into a
+     * @return the Item with the given rank
+     */
+    static Item select(Item[] a, int rank) {
+        int from = 0;
+        int to = a.length - 1;
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        while (from < to) {
+            Item pivot = a[from + random.nextInt(to - from + 1)];
+            // three-way partition: < pivot, == pivot, > pivot
+            int lt = from;
+            int gt = to;
+            int i = from;
+            while (i <= gt) {
+                int c = a[i].compareTo(pivot);
+                if (c < 0) {
+                    swap(a, lt++, i++);
+                } else if (c > 0) {
+                    swap(a, i, gt--);
+                } else {
+                    i++;
+                }
+            }
+            if (rank < lt) {
+                to = lt - 1;
+            } else if (rank > gt) {
+                from = gt + 1;
+            } else {
+                return a[rank];
+            }
+        }
+        return a[rank];
+    }
+
+    /**
+     * Rearranges a so that a[rank] is the value that would be there if a
+     * were sorted, and returns it.
+     *
+     * @param a the values
+     * @param rank an index into a
+     * @return the value with the given rank
+     */
+    static int select(int[] a, int rank) {
+        int from = 0;
+        int to = a.length - 1;
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        while (from < to) {
+            int pivot = a[from + random.nextInt(to - from + 1)];
+            int lt = from;
+            int gt = to;
+            int i = from;
+            while (i <= gt) {
+                if (a[i] < pivot) {
+                    swap(a, lt++, i++);
+                } else if (a[i] > pivot) {
+                    swap(a, i, gt--);
+                } else {
+                    i++;
+                }
+            }
+            if (rank < lt) {
+                to = lt - 1;
+            } else if (rank > gt) {
+                from = gt + 1;
+            } else {
+                return a[rank];
+            }
+        }
+        return a[rank];
+    }
+
+    private static void swap(Item[] a, int i, int j) {
+        Item tmp = a[i];
+        a[i] = a[j];
+        a[j] = tmp;
+    }
+
+    private static void swap(int[] a, int i, int j) {
+        int tmp = a[i];
+        a[i] = a[j];
+        a[j] = tmp;
+    }
+}
@@ -1,6 +1,23 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.ref.WeakReference;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+import java.util.stream.Stream;
 
 /**
  * A Smartshelf holds zero or more Items and can provide information about the
@@ -13,9 +30,87 @@ import java.util.List;
  *
  * @author sobia
  */
-public class Smartshelf {
+public class Smartshelf implements AutoCloseable {
 
-    private final List<Item> items;
+    /** The number of Items a new Smartshelf has room for by default. */
+    private static final int DEFAULT_CAPACITY = 10;
+
+    private static final SmartshelfListener[] NO_LISTENERS = {};
+
+    /** Holds the Items of this Smartshelf; never contains null. */
+    private ItemStore store;
+
+    /**
+     * Whether store must not be modified, either because it may also be
+     * read by another Smartshelf (a view made with viewOfItemsWith, or the
+     * Smartshelf a view was made of, see detachViews) or because it is
+     * read-only (e.g., a mapped snapshot file). Such a store is copied
+     * before the first modification of this Smartshelf instead
+     * (copy-on-write).
+     */
+    private boolean storeShared;
+
+    /**
+     * The views made of this Smartshelf with viewOfItemsWith that may still
+     * read store; null if there are none. The references are weak, so that
+     * views that are no longer used do not make this Smartshelf copy its
+     * Items.
+     */
+    private List<WeakReference<Smartshelf>> views;
+
+    /*
+     * Aggregates over the Items in store, kept up to date by the modifiers so
+     * that the corresponding accessors do not have to look at every Item. The
+     * number of Items is store.size().
+     */
+
+    /**
+     * Whether totalWeightInGrammes (and the name index and weight
+     * histogram, if any) are up to date. This is false only for Smartshelfs
+     * made from an existing store, until their aggregates are asked for.
+     */
+    private boolean aggregatesKnown = true;
+
+    /** The sum of the weights in grammes of all Items in this Smartshelf. */
+    private long totalWeightInGrammes;
+
+    /**
+     * The greatest Item in this Smartshelf wrt the natural ordering of Item;
+     * null if this Smartshelf does not contain any Items.
+     */
+    private Item greatest;
+
+    /**
+     * Whether greatest is up to date. Like aggregatesKnown, but kept apart
+     * because finding the greatest Item means looking at every Item, while
+     * some stores know their total weight right away (e.g., a snapshot).
+     */
+    private boolean greatestKnown = true;
+
+    /**
+     * Whether contentHash is up to date. Like aggregatesKnown, but kept
+     * apart so that the total weight of, e.g., a view can be known without
+     * looking at every Item.
+     */
+    private boolean contentHashKnown = true;
+
+    /**
+     * The sum of the hash codes of all Items in this Smartshelf, which does
+     * not depend on their order; see hashCode().
+     */
+    private int contentHash;
+
+    /** Counts the Items by name; null unless enableNameIndex() was called. */
+    private NameIndex nameIndex;
+
+    /**
+     * Counts the Items by weight; null unless enableWeightHistogram() was
+     * called.
+     */
+    private WeightHistogram weightHistogram;
+
+    /** The listeners to be notified of modifications; never null. */
+    private SmartshelfListener[] listeners = NO_LISTENERS;
 
     /* Constructors */
 
@@ -23,7 +118,45 @@ public class Smartshelf {
      * Constructs a new Smartshelf without any Items.
      */
     public Smartshelf() {
-        this.items = new ArrayList<>();
+        this(StorageMode.LIST);
+    }
+
+    /**
+     * Constructs a new Smartshelf without any Items that stores its Items
+     * as specified by mode.
+     *
+     * @param mode how the Items are stored; must not be null
+     */
+    public Smartshelf(StorageMode mode) {
+        this(mode, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Constructs a new Smartshelf without any Items that has room for
+     * initialCapacity Items before its storage has to grow.
+     *
+     * @param initialCapacity the expected number of Items
+     * @throws IllegalArgumentException if initialCapacity is negative
+     */
+    public Smartshelf(int initialCapacity) {
+        this(StorageMode.LIST, initialCapacity);
+    }
+
+    /**
+     * Constructs a new Smartshelf without any Items that stores its Items
+     * as specified by mode and has room for initialCapacity Items before
+     * its storage has to grow (for modes where this applies).
+     *
+     * @param mode how the Items are stored; must not be null
+     * @param initialCapacity the expected number of Items
+     * @throws IllegalArgumentException if initialCapacity is negative
+     */
+    public Smartshelf(StorageMode mode, int initialCapacity) {
+        if (initialCapacity < 0) {
+            throw new IllegalArgumentException("Expected initialCapacity >= 0, found "
+                    + initialCapacity);
+        }
+        this.store = mode.newStore(initialCapacity);
     }
 
     /**
@@ -36,10 +169,25 @@ public class Smartshelf {
      *  constructed Smartshelf
      */
     public Smartshelf(Item[] items) {
-        this(); //  field initialization to the no-arg constructor
+        this(StorageMode.LIST, items.length); // room for all items at once
         addAll(items);
     }
 
+    /**
+     * Constructs a new Smartshelf with the Items in store. The aggregates
+     * are computed when they are first needed.
+     *
+     * @param store holds the Items of the new Smartshelf
+     * @param storeShared whether store must not be modified, see the field
+     */
+    Smartshelf(ItemStore store, boolean storeShared) {
+        this.store = store;
+        this.storeShared = storeShared;
+        this.aggregatesKnown = false;
+        this.greatestKnown = false;
+        this.contentHashKnown = false;
+    }
+
     /* Modifiers */
 
     /**
@@ -50,11 +198,18 @@ public class Smartshelf {
      * @return true if e is not null, false otherwise
      */
     public boolean add(Item e) {
-        if (e == null) {
-            return false;
+        long start = SmartshelfMetrics.start();
+        try {
+            if (e == null) {
+                return false;
+            }
+            prepareForModification();
+            this.store.add(e);
+            added(e);
+            return true;
+        } finally {
+            SmartshelfMetrics.stop(SmartshelfMetrics.Operation.ADD, start);
         }
-        this.items.add(e);
-        return true;
     }
 
     /**
@@ -66,22 +221,173 @@ public class Smartshelf {
      *  false otherwise
      */
     public boolean addAll(Item[] items) {
-        boolean addedAny = false;
-        for (Item it : items) {
-            if (it != null) {
-                this.items.add(it);
-                addedAny = true;
+        long start = SmartshelfMetrics.start();
+        try {
+            int first = 0;
+            while (first < items.length && items[first] == null) {
+                first++;
+            }
+            if (first == items.length) {
+                // nothing to add, so a shared store is not copied
+                return false;
             }
+            prepareForModification();
+            this.store.ensureCapacity((int) Math.min(Integer.MAX_VALUE,
+                (long) this.store.size() + items.length - first));
+            for (int i = first; i < items.length; i++) {
+                Item it = items[i];
+                if (it != null) {
+                    this.store.add(it);
+                    added(it);
+                }
+            }
+            return true;
+        } finally {
+            SmartshelfMetrics.stop(SmartshelfMetrics.Operation.ADD_ALL, start);
         }
-        return addedAny;
+    }
+
+    /**
+     * Adds all non-null Items in items to this Smartshelf. Room for all of
+     * them is made before the first one is added.
+     *
+     * @param items contains the Item objects to be added to this
+     *  Smartshelf; must not be null (but may contain null)
+     * @return true if at least one element of items is non-null;
+     *  false otherwise
+     */
+    public boolean addAll(Collection<? extends Item> items) {
+        return addAll(items.spliterator());
+    }
+
+    /**
+     * Adds all non-null Items in items to this Smartshelf. If the number of
+     * Items is known in advance, calling ensureCapacity first avoids
+     * growing the storage repeatedly.
+     *
+     * @param items contains the Item objects to be added to this
+     *  Smartshelf; must not be null (but may contain null)
+     * @return true if at least one element of items is non-null;
+     *  false otherwise
+     */
+    public boolean addAll(Iterable<? extends Item> items) {
+        return addAll(items.spliterator());
+    }
+
+    /**
+     * Adds all non-null Items in items to this Smartshelf, consuming the
+     * stream. If the stream knows its size, room for all Items is made
+     * before the first one is added.
+     *
+     * @param items contains the Item objects to be added to this
+     *  Smartshelf; must not be null (but may contain null)
+     * @return true if at least one element of items is non-null;
+     *  false otherwise
+     */
+    public boolean addAll(Stream<? extends Item> items) {
+        return addAll(items.spliterator());
+    }
+
+    /**
+     * Adds all remaining non-null Items in items to this Smartshelf in a
+     * single pass. If items reports its exact size, room for all Items is
+     * made before the first one is added.
+     *
+     * @param items contains the Item objects to be added to this
+     *  Smartshelf; must not be null (but may contain null)
+     * @return true if at least one element of items is non-null;
+     *  false otherwise
+     */
+    public boolean addAll(Spliterator<? extends Item> items) {
+        long start = SmartshelfMetrics.start();
+        try {
+            prepareForModification();
+            int sizeBefore = this.store.size();
+            long expected = items.getExactSizeIfKnown();
+            if (expected > 0) {
+                this.store.ensureCapacity((int) Math.min(Integer.MAX_VALUE, sizeBefore + expected));
+            }
+            items.forEachRemaining(it -> {
+                if (it != null) {
+                    this.store.add(it);
+                    added(it);
+                }
+            });
+            return this.store.size() > sizeBefore;
+        } finally {
+            SmartshelfMetrics.stop(SmartshelfMetrics.Operation.ADD_ALL, start);
+        }
+    }
+
+    /**
+     * Makes room for at least minCapacity Items in this Smartshelf, so
+     * that adding up to that many Items does not have to grow its storage
+     * again (for storage modes where this applies).
+     *
+     * @param minCapacity the number of Items to make room for
+     */
+    public void ensureCapacity(int minCapacity) {
+        prepareForModification();
+        this.store.ensureCapacity(minCapacity);
+    }
+
+    /**
+     * Returns the number of Items this Smartshelf has room for before its
+     * storage has to grow; for storage modes that do not allocate room in
+     * advance, this is the number of Items. For StorageMode.LIST it is an
+     * estimate (see ListItemStore).
+     *
+     * @return the number of Items this Smartshelf has room for
+     */
+    int capacity() {
+        return this.store.capacity();
+    }
+
+    /**
+     * Releases the memory outside the Java heap held by this Smartshelf,
+     * i.e., for StorageMode.OFF_HEAP; does nothing for the other storage
+     * modes. After that, an OFF_HEAP Smartshelf must not be used any more,
+     * and neither must views made from it with viewOfItemsWith. Smartshelfs
+     * made with makeNewSmartshelfWith have their own storage and have to
+     * be closed separately.
+     */
+    @Override
+    public void close() {
+        this.store.close();
     }
 
     /**
      * Empties this Smartshelf to a Smartshelf that contains 0 Items.
      */
     public void empty() {
-        this.items.clear();
-        
+        long start = SmartshelfMetrics.start();
+        try {
+            detachViews(false);
+            if (this.storeShared) {
+                // an empty copy of the same kind
+                this.store = this.store.emptyCopy(0);
+                this.storeShared = false;
+            } else {
+                this.store.clear();
+            }
+            this.totalWeightInGrammes = 0;
+            this.greatest = null;
+            this.greatestKnown = true;
+            this.contentHash = 0;
+            this.contentHashKnown = true;
+            if (this.nameIndex != null) {
+                this.nameIndex.clear();
+            }
+            if (this.weightHistogram != null) {
+                this.weightHistogram.clear();
+            }
+            this.aggregatesKnown = true;
+            for (SmartshelfListener l : this.listeners) {
+                l.emptied(this);
+            }
+        } finally {
+            SmartshelfMetrics.stop(SmartshelfMetrics.Operation.EMPTY, start);
+        }
     }
 
     /**
@@ -93,8 +399,241 @@ public class Smartshelf {
      *  Items that are kept
      */
     public void keepOnlyItemsWith(int maxItemWeightInGrammes) {
-        this.items.removeIf(it -> it.getWeightInGrammes() > maxItemWeightInGrammes);
-        
+        long start = SmartshelfMetrics.start();
+        try {
+            detachViews(false);
+            if (this.storeShared) {
+                // copying only the kept Items is cheaper than copying everything
+                // and then removing Items
+                this.store = this.store.copyWith(maxItemWeightInGrammes);
+                this.storeShared = false;
+                this.aggregatesKnown = false;
+                this.greatestKnown = false;
+                this.contentHashKnown = false;
+            } else {
+                ensureAggregates();
+                if (this.nameIndex == null) {
+                    // only weights are needed, so no Items are made for the
+                    // storage modes that keep the weights in a column; the
+                    // sum of the hash codes is computed again when needed
+                    this.store.removeWeightsHeavierThan(maxItemWeightInGrammes, this::removedWeight);
+                    this.contentHashKnown = false;
+                } else {
+                    this.store.removeHeavierThan(maxItemWeightInGrammes, this::removed);
+                }
+                // only if the greatest Item was removed do we need to look for
+                // a new one among the remaining Items
+                if (this.greatestKnown && this.greatest != null
+                        && this.greatest.getWeightInGrammes() > maxItemWeightInGrammes) {
+                    this.greatest = this.store.greatest();
+                }
+            }
+            for (SmartshelfListener l : this.listeners) {
+                l.keptOnlyItemsWith(this, maxItemWeightInGrammes);
+            }
+        } finally {
+            SmartshelfMetrics.stop(SmartshelfMetrics.Operation.KEEP_ONLY_ITEMS_WITH, start);
+        }
+    }
+
+    /**
+     * Removes all Items with the given name from this Smartshelf. With a
+     * name index (see enableNameIndex), this returns right away if there is
+     * no such Item. Without one, a Smartshelf that shares its Items (with a
+     * view, or with a mapped snapshot file) first looks for such an Item,
+     * so that it only copies its Items if something is removed.
+     *
+     * @param name the name of the Items to be removed; must not be null
+     * @return the number of removed Items
+     */
+    public int removeByName(String name) {
+        long start = SmartshelfMetrics.start();
+        try {
+            Objects.requireNonNull(name, "name must not be null!");
+            int indexed = countByNameIfIndexed(name);
+            if (indexed == 0
+                    || indexed < 0 && (this.storeShared || this.views != null) && !this.store.containsName(name)) {
+                // nothing to remove, so the store is not copied for views
+                // or because it is shared
+                return 0;
+            }
+            detachViews(false);
+            prepareForModification();
+            int sizeBefore = this.store.size();
+            this.store.removeNamed(name, this::removed);
+            int removedItems = sizeBefore - this.store.size();
+            if (removedItems == 0) {
+                return 0;
+            }
+            if (this.greatestKnown && this.greatest.getName().equals(name)) {
+                this.greatest = this.store.greatest();
+            }
+            for (SmartshelfListener l : this.listeners) {
+                l.removedByName(this, name);
+            }
+            return removedItems;
+        } finally {
+            SmartshelfMetrics.stop(SmartshelfMetrics.Operation.REMOVE_BY_NAME, start);
+        }
+    }
+
+    /**
+     * Adds a listener that is notified of every later modification of this
+     * Smartshelf, see SmartshelfListener. A listener that has been added
+     * several times is notified several times.
+     *
+     * @param listener the listener to be added; must not be null
+     */
+    public void addListener(SmartshelfListener listener) {
+        Objects.requireNonNull(listener, "listener must not be null!");
+        SmartshelfListener[] newListeners = Arrays.copyOf(this.listeners, this.listeners.length + 1);
+        newListeners[this.listeners.length] = listener;
+        this.listeners = newListeners;
+    }
+
+    /**
+     * Removes a listener added by addListener, so that it is no longer
+     * notified. Does nothing if listener has not been added.
+     *
+     * @param listener the listener to be removed
+     */
+    public void removeListener(SmartshelfListener listener) {
+        for (int i = 0; i < this.listeners.length; i++) {
+            if (this.listeners[i] == listener) {
+                SmartshelfListener[] newListeners = new SmartshelfListener[this.listeners.length - 1];
+                System.arraycopy(this.listeners, 0, newListeners, 0, i);
+                System.arraycopy(this.listeners, i + 1, newListeners, i, newListeners.length - i);
+                this.listeners = newListeners;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Makes sure that store may be modified and that the aggregates are up
+     * to date, so that they can be updated incrementally.
+     */
+    private void prepareForModification() {
+        ensureAggregates();
+        detachViews(true);
+        if (this.storeShared) {
+            this.store = this.store.copyWith(Integer.MAX_VALUE);
+            this.storeShared = false;
+        }
+    }
+
+    /**
+     * Makes sure that store may be modified without changing what the views
+     * of this Smartshelf see. A view only presents the Items store had when
+     * the view was made, so adding Items to a store that only appends them
+     * does not affect it. Before any other modification, a store that may
+     * still be read by a view is left to the views, i.e., marked as shared,
+     * so that this Smartshelf works on a copy from then on.
+     *
+     * @param adding whether the modification only adds Items
+     */
+    private void detachViews(boolean adding) {
+        if (this.views == null || (adding && this.store.addAppends())) {
+            return;
+        }
+        for (WeakReference<Smartshelf> ref : this.views) {
+            if (ref.get() != null) {
+                this.storeShared = true;
+                break;
+            }
+        }
+        this.views = null;
+    }
+
+    /**
+     * Computes the aggregates (and the name index and weight histogram, if
+     * any) of this Smartshelf from store if they are not up to date. The
+     * greatest Item is left to ensureGreatest.
+     */
+    private void ensureAggregates() {
+        if (!this.aggregatesKnown) {
+            this.totalWeightInGrammes = this.store.totalWeight();
+            if (this.nameIndex != null) {
+                this.nameIndex.clear();
+                for (Item it : this.store) {
+                    this.nameIndex.add(it.getName());
+                }
+            }
+            if (this.weightHistogram != null) {
+                this.weightHistogram.clear();
+                this.store.forEachWeight(this.weightHistogram::add);
+            }
+            this.aggregatesKnown = true;
+        }
+    }
+
+    /**
+     * Finds the greatest Item of this Smartshelf in store if it is not up
+     * to date.
+     */
+    private void ensureGreatest() {
+        if (!this.greatestKnown) {
+            this.greatest = this.store.greatest();
+            this.greatestKnown = true;
+        }
+    }
+
+    /**
+     * Updates the aggregates of this Smartshelf for an Item that has just
+     * been added and notifies the listeners.
+     *
+     * @param it the added Item; must not be null
+     */
+    private void added(Item it) {
+        this.totalWeightInGrammes += it.getWeightInGrammes();
+        // an unknown greatest Item is found in store later, including it
+        if (this.greatestKnown && (this.greatest == null || it.compareTo(this.greatest) > 0)) {
+            this.greatest = it;
+        }
+        if (this.contentHashKnown) {
+            this.contentHash += it.hashCode();
+        }
+        if (this.nameIndex != null) {
+            this.nameIndex.add(it.getName());
+        }
+        if (this.weightHistogram != null) {
+            this.weightHistogram.add(it.getWeightInGrammes());
+        }
+        for (SmartshelfListener l : this.listeners) {
+            l.itemAdded(this, it);
+        }
+    }
+
+    /**
+     * Updates the aggregates of this Smartshelf for equal Items that have
+     * just been removed, all at once. The greatest Item is left to the
+     * caller.
+     *
+     * @param it the removed Item; must not be null
+     * @param count how often it was removed
+     */
+    private void removed(Item it, int count) {
+        removedWeight(it.getWeightInGrammes(), count);
+        if (this.contentHashKnown) {
+            this.contentHash -= it.hashCode() * count;
+        }
+        if (this.nameIndex != null) {
+            this.nameIndex.remove(it.getName(), count);
+        }
+    }
+
+    /**
+     * Updates the aggregates that only depend on the weights for Items of
+     * the same weight that have just been removed.
+     *
+     * @param weightInGrammes the weight of the removed Items
+     * @param count the number of removed Items
+     */
+    private void removedWeight(int weightInGrammes, int count) {
+        this.totalWeightInGrammes -= (long) weightInGrammes * count;
+        if (this.weightHistogram != null) {
+            this.weightHistogram.remove(weightInGrammes, count);
+        }
     }
 
     /* Accessors */
@@ -105,23 +644,30 @@ public class Smartshelf {
      * @return the number of non-null Items in this Smartshelf
      */
     public int numberOfItems() {
-
-     return this.items.size();   
-        return 0;
+        return this.store.size();
     }
 
     /**
      * Returns the total weight of the Items in this Smartshelf.
      *
      * @return the total weight of the Items in this Smartshelf.
+     * @throws ArithmeticException if the total weight does not fit into an
+     *  int; use totalWeightInGrammesAsLong() for such Smartshelfs
      */
     public int totalWeightInGrammes() {
+        ensureAggregates();
+        return Math.toIntExact(this.totalWeightInGrammes);
+    }
 
-         int sum = 0;
-        for (Item it : this.items) {
-            sum += it.getWeightInGrammes();
-        }
-        return sum;
+    /**
+     * Returns the total weight of the Items in this Smartshelf as a long,
+     * which cannot overflow even for Smartshelfs with very many Items.
+     *
+     * @return the total weight of the Items in this Smartshelf.
+     */
+    public long totalWeightInGrammesAsLong() {
+        ensureAggregates();
+        return this.totalWeightInGrammes;
     }
 
     /**
@@ -143,9 +689,8 @@ public class Smartshelf {
         if (n == 0) {
             return -1.0;
         }
-        return totalWeightInGrammes() / (double) n;
-        
-        return 0.0;
+        ensureAggregates();
+        return this.totalWeightInGrammes / (double) n;
     }
 
     /**
@@ -158,10 +703,135 @@ public class Smartshelf {
      *  null if this Smartshelf does not contain any Item objects
      */
     public Item greatestItem() {
-        if (this.items.isEmpty()) {
-        return null;
+        ensureGreatest();
+        return this.greatest;
     }
-     return Collections.max(this.items);
+
+    /**
+     * Returns the k greatest Items in this Smartshelf according to the
+     * natural ordering of Item, greatest first. If this Smartshelf has fewer
+     * than k Items, all of them are returned. Equal Items count separately.
+     * Takes O(n log k) time for n Items, without sorting all of them.
+     *
+     * @param k the number of Items asked for; must not be negative
+     * @return a new list with the k greatest Items, greatest first
+     * @throws IllegalArgumentException if k is negative
+     */
+    public List<Item> topK(int k) {
+        return extremes(k, Comparator.naturalOrder());
+    }
+
+    /**
+     * Returns the k least Items in this Smartshelf according to the natural
+     * ordering of Item, least first. If this Smartshelf has fewer than k
+     * Items, all of them are returned. Equal Items count separately. Takes
+     * O(n log k) time for n Items, without sorting all of them.
+     *
+     * @param k the number of Items asked for; must not be negative
+     * @return a new list with the k least Items, least first
+     * @throws IllegalArgumentException if k is negative
+     */
+    public List<Item> bottomK(int k) {
+        return extremes(k, Comparator.reverseOrder());
+    }
+
+    /**
+     * Returns the k-th greatest Item in this Smartshelf according to the
+     * natural ordering of Item, so kthGreatest(1) is greatestItem(). Equal
+     * Items count separately. Takes expected O(n) time for n Items.
+     *
+     * @param k the rank of the Item, counted from the greatest; must be
+     *  positive
+     * @return the k-th greatest Item; null if this Smartshelf has fewer
+     *  than k Items
+     * @throws IllegalArgumentException if k is not positive
+     */
+    public Item kthGreatest(int k) {
+        if (k <= 0) {
+            throw new IllegalArgumentException("Expected k > 0, found " + k);
+        }
+        int n = numberOfItems();
+        if (k > n) {
+            return null;
+        }
+        if (k == 1) {
+            return greatestItem();
+        }
+        Item[] all = new Item[n];
+        int i = 0;
+        for (Item it : this.store) {
+            all[i++] = it;
+        }
+        return Selection.select(all, n - k);
+    }
+
+    /**
+     * Returns the weight in grammes at the given percentile of the weights
+     * of the Items in this Smartshelf, using the nearest-rank method: the
+     * least weight such that at least percentile per cent of the Items are
+     * at most that heavy. So weightPercentile(50) is the median weight and
+     * weightPercentile(100) the greatest weight. Takes expected O(n) time
+     * for n Items, or O(log w) time for a greatest weight w with a weight
+     * histogram (see enableWeightHistogram). In case there is no Item in
+     * this Smartshelf, -1 is returned.
+     *
+     * @param percentile greater than 0 and at most 100
+     * @return the weight at the given percentile, or -1 if there is no Item
+     * @throws IllegalArgumentException if percentile is out of range
+     */
+    public int weightPercentile(double percentile) {
+        if (!(percentile > 0 && percentile <= 100)) {
+            throw new IllegalArgumentException("Expected 0 < percentile <= 100, found "
+                    + percentile);
+        }
+        int n = numberOfItems();
+        if (n == 0) {
+            return -1;
+        }
+        if (this.weightHistogram != null) {
+            ensureAggregates();
+            long rank = (long) Math.ceil(percentile / 100 * n);
+            return this.weightHistogram.weightOfRank(Math.max(1, Math.min(n, rank)));
+        }
+        int[] weights = new int[n];
+        int i = 0;
+        for (Item it : this.store) {
+            weights[i++] = it.getWeightInGrammes();
+        }
+        int rank = (int) Math.ceil(percentile / 100 * n) - 1;
+        return Selection.select(weights, Math.max(0, Math.min(n - 1, rank)));
+    }
+
+    /**
+     * Returns the k greatest Items wrt order, greatest first, by keeping the
+     * k greatest Items seen so far in a heap whose root is the least of them.
+     *
+     * @param k the number of Items asked for; must not be negative
+     * @param order the ordering to use
+     * @return a new list with the k greatest Items wrt order
+     */
+    private List<Item> extremes(int k, Comparator<Item> order) {
+        if (k < 0) {
+            throw new IllegalArgumentException("Expected k >= 0, found " + k);
+        }
+        int limit = Math.min(k, numberOfItems());
+        if (limit == 0) {
+            return new ArrayList<>();
+        }
+        PriorityQueue<Item> heap = new PriorityQueue<>(limit, order);
+        for (Item it : this.store) {
+            if (heap.size() < limit) {
+                heap.add(it);
+            } else if (order.compare(it, heap.peek()) > 0) {
+                heap.poll();
+                heap.add(it);
+            }
+        }
+        Item[] result = new Item[heap.size()];
+        for (int i = result.length - 1; i >= 0; i--) {
+            result[i] = heap.poll();
+        }
+        return new ArrayList<>(Arrays.asList(result));
     }
 
     /**
@@ -175,16 +845,388 @@ public class Smartshelf {
      *  whose weight is less than or equal to the specified method parameter
      */
     public Smartshelf makeNewSmartshelfWith(int maxItemWeightInGrammes) {
-         List<Item> filtered = new ArrayList<>();
-        for (Item it : this.items) {
-            if (it.getWeightInGrammes() <= maxItemWeightInGrammes) {
-                filtered.add(it);
+        SmartshelfEvent event = new SmartshelfEvent();
+        event.begin();
+        long start = SmartshelfMetrics.start();
+        try {
+            return new Smartshelf(this.store.copyWith(maxItemWeightInGrammes), false);
+        } finally {
+            SmartshelfMetrics.stop(SmartshelfMetrics.Operation.MAKE_NEW_SMARTSHELF_WITH, start);
+            // the size of a view is a scan, so it is only computed for
+            // events that are recorded
+            if (event.shouldCommit()) {
+                event.finish(SmartshelfMetrics.Operation.MAKE_NEW_SMARTSHELF_WITH, this.store.size());
+            }
+        }
+    }
+
+    /**
+     * Returns a new Smartshelf with exactly those Items of this Smartshelf
+     * whose weight is less than or equal to the specified method parameter,
+     * like makeNewSmartshelfWith, but without copying any Items up front.
+     * Instead, the new Smartshelf is a read-only view that shares the Items
+     * of this Smartshelf and evaluates the weight condition when it is
+     * queried. Neither Smartshelf ever sees the modifications of the other:
+     * the new Smartshelf copies the Items it needs when it is first
+     * modified. Adding Items to this Smartshelf copies nothing for the
+     * storage modes that append Items (LIST, COLUMNAR and OFF_HEAP), since
+     * the view only presents the Items this Smartshelf had when the view
+     * was made. Before any other modification while the view is still in
+     * use, this Smartshelf copies its Items (for keepOnlyItemsWith only the
+     * kept ones, for empty none). Views that are no longer used cost
+     * nothing once they have been garbage collected.
+     *
+     * This is cheapest when the new Smartshelf is only queried, e.g., for
+     * its number of Items.
+     *
+     * @param maxItemWeightInGrammes the maximum weight in grammes for the
+     *  Items in the new Smartshelf
+     * @return a new Smartshelf with exactly those Items of this Smartshelf
+     *  whose weight is less than or equal to the specified method parameter
+     */
+    public Smartshelf viewOfItemsWith(int maxItemWeightInGrammes) {
+        Smartshelf view = new Smartshelf(new FilteredItemStore(this.store, maxItemWeightInGrammes), true);
+        if (this.views == null) {
+            this.views = new ArrayList<>();
+        } else if (Integer.bitCount(this.views.size()) == 1) {
+            // forgetting the views that are no longer used now and then
+            // keeps the list from growing without bound
+            this.views.removeIf(ref -> ref.get() == null);
+        }
+        this.views.add(new WeakReference<>(view));
+        return view;
+    }
+
+    /**
+     * Splits this Smartshelf into weight bands, like calling
+     * makeNewSmartshelfWith once per threshold, but without looking at the
+     * Items once per threshold. For thresholds t[0] < t[1] < ... < t[k-1],
+     * the result has k + 1 Smartshelfs: the first one has the Items of at
+     * most t[0] grammes, the i-th one those heavier than t[i-1] and at most
+     * t[i] grammes, and the last one those heavier than t[k-1]. The new
+     * Smartshelfs have the storage mode of this Smartshelf.
+     *
+     * The Items are counted per band first, so that every new Smartshelf
+     * is made with room for exactly its Items, and then distributed in a
+     * single pass. Does not modify this Smartshelf.
+     *
+     * @param thresholds the maximum weights in grammes of all but the last
+     *  band, in strictly ascending order; must not be null
+     * @return thresholds.length + 1 new Smartshelfs, one per band, lightest
+     *  band first
+     * @throws IllegalArgumentException if thresholds are not strictly
+     *  ascending
+     */
+    public Smartshelf[] partitionByWeight(int[] thresholds) {
+        WeightBands bands = weightBands(thresholds);
+        Smartshelf[] result = new Smartshelf[bands.numberOfBands()];
+        for (int b = 0; b < result.length; b++) {
+            // an empty store of the same kind, made big enough right away
+            result[b] = new Smartshelf(this.store.emptyCopy(bands.numberOfItems(b)), false);
+            result[b].aggregatesKnown = true;
+        }
+        for (Item it : this.store) {
+            Smartshelf band = result[bandOf(thresholds, it.getWeightInGrammes())];
+            band.store.add(it);
+            band.added(it);
+        }
+        return result;
+    }
+
+    /**
+     * Counts the Items of this Smartshelf and adds up their weights per
+     * weight band in a single pass, with the bands as for
+     * partitionByWeight. Only the weights are looked at, so for storage
+     * modes that keep them in a column of their own no Item objects are
+     * made.
+     *
+     * @param thresholds the maximum weights in grammes of all but the last
+     *  band, in strictly ascending order; must not be null
+     * @return the number of Items and total weight per band
+     * @throws IllegalArgumentException if thresholds are not strictly
+     *  ascending
+     */
+    public WeightBands weightBands(int[] thresholds) {
+        for (int i = 1; i < thresholds.length; i++) {
+            if (thresholds[i - 1] >= thresholds[i]) {
+                throw new IllegalArgumentException("Expected strictly ascending thresholds, found "
+                        + thresholds[i - 1] + " before " + thresholds[i]);
+            }
+        }
+        int[] counts = new int[thresholds.length + 1];
+        long[] totals = new long[thresholds.length + 1];
+        this.store.forEachWeight(w -> {
+            int b = bandOf(thresholds, w);
+            counts[b]++;
+            totals[b] += w;
+        });
+        return new WeightBands(thresholds.clone(), counts, totals);
+    }
+
+    /**
+     * Returns the index of the weight band that weight belongs to.
+     */
+    private static int bandOf(int[] thresholds, int weight) {
+        // the first threshold that is at least weight
+        int i = Arrays.binarySearch(thresholds, weight);
+        return i >= 0 ? i : -i - 1;
+    }
+
+    /**
+     * Maintains an index of the Items of this Smartshelf by name from now
+     * on, so that containsName and countByName take constant time,
+     * namesStartingWith does not have to look at every Item, and
+     * removeByName returns right away if there is nothing to remove. The
+     * index costs a hash lookup for every added and removed Item. Does
+     * nothing if the index is already maintained.
+     */
+    public void enableNameIndex() {
+        if (this.nameIndex == null) {
+            this.nameIndex = new NameIndex();
+            for (Item it : this.store) {
+                this.nameIndex.add(it.getName());
+            }
+        }
+    }
+
+    /**
+     * Returns whether this Smartshelf contains an Item with the given name.
+     *
+     * @param name the name to look for; must not be null
+     * @return whether there is an Item with the given name
+     */
+    public boolean containsName(String name) {
+        return countByName(name) > 0;
+    }
+
+    /**
+     * Returns the number of Items with the given name in this Smartshelf.
+     *
+     * @param name the name to look for; must not be null
+     * @return the number of Items with the given name
+     */
+    public int countByName(String name) {
+        Objects.requireNonNull(name, "name must not be null!");
+        int count = countByNameIfIndexed(name);
+        if (count >= 0) {
+            return count;
+        }
+        count = 0;
+        for (Item it : this.store) {
+            if (it.getName().equals(name)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Returns the distinct names of the Items in this Smartshelf that start
+     * with prefix, in their natural ordering.
+     *
+     * @param prefix the prefix to look for; must not be null
+     * @return a new sorted set with the matching names
+     */
+    public SortedSet<String> namesStartingWith(String prefix) {
+        Objects.requireNonNull(prefix, "prefix must not be null!");
+        if (this.nameIndex != null) {
+            ensureAggregates();
+            return this.nameIndex.namesStartingWith(prefix);
+        }
+        SortedSet<String> result = new TreeSet<>();
+        for (Item it : this.store) {
+            if (it.getName().startsWith(prefix)) {
+                result.add(it.getName());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the number of Items with the given name according to the name
+     * index.
+     *
+     * @param name the name to look for
+     * @return the number of Items with the given name; -1 if there is no
+     *  name index
+     */
+    private int countByNameIfIndexed(String name) {
+        if (this.nameIndex == null) {
+            return -1;
+        }
+        ensureAggregates();
+        return this.nameIndex.count(name);
+    }
+
+    /**
+     * Maintains a histogram of the weights of the Items of this Smartshelf
+     * from now on, so that numberOfItemsWith, totalWeightInGrammesOfItemsWith
+     * and weightPercentile do not have to look at every Item. The histogram
+     * costs O(log w) time for every added and removed Item, for a greatest
+     * weight w, and memory proportional to w (up to a limit, beyond which
+     * weights are counted individually). It pays off for the usual narrow
+     * ranges of weights. Does nothing if the histogram is already
+     * maintained.
+     */
+    public void enableWeightHistogram() {
+        if (this.weightHistogram == null) {
+            this.weightHistogram = new WeightHistogram();
+            this.store.forEachWeight(this.weightHistogram::add);
+        }
+    }
+
+    /**
+     * Returns the number of Items in this Smartshelf whose weight is less
+     * than or equal to the specified maximum weight, i.e., the number of
+     * Items of makeNewSmartshelfWith(maxItemWeightInGrammes), without
+     * making that Smartshelf. With a weight histogram, this does not look
+     * at the Items.
+     *
+     * @param maxItemWeightInGrammes the maximum weight in grammes
+     * @return the number of Items of at most maxItemWeightInGrammes grammes
+     */
+    public int numberOfItemsWith(int maxItemWeightInGrammes) {
+        if (this.weightHistogram != null) {
+            ensureAggregates();
+            return (int) this.weightHistogram.countAtMost(maxItemWeightInGrammes);
+        }
+        int[] count = new int[1];
+        this.store.forEachWeight(w -> {
+            if (w <= maxItemWeightInGrammes) {
+                count[0]++;
             }
+        });
+        return count[0];
+    }
+
+    /**
+     * Returns the total weight of the Items in this Smartshelf whose weight
+     * is less than or equal to the specified maximum weight. With a weight
+     * histogram, this does not look at the Items.
+     *
+     * @param maxItemWeightInGrammes the maximum weight in grammes
+     * @return the total weight in grammes of the Items of at most
+     *  maxItemWeightInGrammes grammes
+     */
+    public long totalWeightInGrammesOfItemsWith(int maxItemWeightInGrammes) {
+        if (this.weightHistogram != null) {
+            ensureAggregates();
+            return this.weightHistogram.totalAtMost(maxItemWeightInGrammes);
+        }
+        long[] total = new long[1];
+        this.store.forEachWeight(w -> {
+            if (w <= maxItemWeightInGrammes) {
+                total[0] += w;
+            }
+        });
+        return total[0];
+    }
+
+    /**
+     * Returns the Items of this Smartshelf sorted by the natural ordering of
+     * Item, least first, e.g., for a sorted export. If the weights span a
+     * range of at most a few times the number of Items, as usual, the Items
+     * are sorted in linear time with counting sorts by name and by weight,
+     * and only the distinct names are compared with each other. With a
+     * weight histogram (see enableWeightHistogram()), the positions of the
+     * weights are taken from its counts.
+     *
+     * @return a new fixed-size list with the Items of this Smartshelf,
+     *  least first
+     */
+    public List<Item> sortedItems() {
+        Item[] all = new Item[numberOfItems()];
+        int i = 0;
+        for (Item it : this.store) {
+            all[i++] = it;
+        }
+        if (this.weightHistogram != null) {
+            ensureAggregates();
+            this.weightHistogram.sortCounted(all);
+        } else {
+            WeightHistogram.sort(all);
         }
-        return new Smartshelf(filtered.toArray(new Item[0]));
-    
+        return Arrays.asList(all);
     }
 
+    /**
+     * Returns an iterator over the Items of this Smartshelf in the natural
+     * ordering of Item, least first, sorted as for sortedItems(). The
+     * iterator does not reflect later modifications of this Smartshelf and
+     * does not support remove().
+     *
+     * @return an iterator over the Items of this Smartshelf, least first
+     */
+    public Iterator<Item> sortedIterator() {
+        return Collections.unmodifiableList(sortedItems()).iterator();
+    }
+
+    /**
+     * Returns a new SmartshelfQuery over the Items of this Smartshelf, to
+     * select Items by several conditions and compute aggregates over them
+     * in a single pass.
+     *
+     * @return a new SmartshelfQuery that selects all Items of this
+     *  Smartshelf until conditions are added
+     */
+    public SmartshelfQuery query() {
+        return new SmartshelfQuery(this);
+    }
+
+    /**
+     * Performs action for every Item in this Smartshelf, in the same order
+     * as toString() lists them.
+     *
+     * @param action the action to perform; must not be null
+     */
+    void forEachItem(Consumer<? super Item> action) {
+        this.store.forEach(action);
+    }
+
+    /**
+     * Performs action for every Item in this Smartshelf whose weight is
+     * between minWeightInGrammes and maxWeightInGrammes (both inclusive),
+     * in the same order as toString() lists them.
+     *
+     * @param minWeightInGrammes the minimum weight in grammes
+     * @param maxWeightInGrammes the maximum weight in grammes
+     * @param action the action to perform; must not be null
+     */
+    void forEachItemBetween(int minWeightInGrammes, int maxWeightInGrammes,
+            Consumer<? super Item> action) {
+        this.store.forEachBetween(minWeightInGrammes, maxWeightInGrammes, action);
+    }
+
+    /**
+     * Passes the weight of every Item in this Smartshelf that is between
+     * minWeightInGrammes and maxWeightInGrammes (both inclusive) to action,
+     * without making Items where the storage mode allows.
+     *
+     * @param minWeightInGrammes the minimum weight in grammes
+     * @param maxWeightInGrammes the maximum weight in grammes
+     * @param action receives every matching weight; must not be null
+     */
+    void forEachWeightBetween(int minWeightInGrammes, int maxWeightInGrammes,
+            IntConsumer action) {
+        this.store.forEachWeightBetween(minWeightInGrammes, maxWeightInGrammes, action);
+    }
+
+    /**
+     * Returns a new, empty Smartshelf that stores its Items in the same
+     * way as this one.
+     *
+     * @return a new, empty Smartshelf
+     */
+    Smartshelf emptyCopy() {
+        return new Smartshelf(this.store.emptyCopy(DEFAULT_CAPACITY), false);
+    }
+
+    /**
+     * The number of characters toString() expects per Item, separator
+     * included, e.g., 18 for "(Face mask, 20g), ".
+     */
+    private static final int RENDERED_ITEM_LENGTH_ESTIMATE = 18;
+
     /**
      * Returns a string representation of this Smartshelf. The string
      * representation consists of a list of the Smartshelf's contents,
@@ -212,22 +1254,132 @@ public class Smartshelf {
      */
     @Override
     public String toString() {
-        
-        StringBuilder sb = new StringBuilder();
-        sb.append("[");
-        for (int i = 0; i < this.items.size(); i++) {
-            sb.append(this.items.get(i).toString());
-            if (i < this.items.size() - 1) {
-                sb.append(", ");
+        SmartshelfEvent event = new SmartshelfEvent();
+        event.begin();
+        long start = SmartshelfMetrics.start();
+        try {
+            // one pass over the Items, starting from an estimate of the
+            // length so that the StringBuilder rarely has to grow
+            long length = 2 + (long) RENDERED_ITEM_LENGTH_ESTIMATE * this.store.size();
+            StringBuilder sb = new StringBuilder((int) Math.min(length, Integer.MAX_VALUE - 8));
+            try {
+                renderTo(sb);
+            } catch (IOException e) {
+                // StringBuilder does not throw IOException
+                throw new UncheckedIOException(e);
+            }
+            return sb.toString();
+        } finally {
+            SmartshelfMetrics.stop(SmartshelfMetrics.Operation.TO_STRING, start);
+            if (event.shouldCommit()) {
+                event.finish(SmartshelfMetrics.Operation.TO_STRING, this.store.size());
+            }
+        }
+    }
+
+    /**
+     * Writes the string representation of this Smartshelf, as returned by
+     * toString(), to out. Every Item is written directly to out, so no
+     * String for the whole Smartshelf (or for a single Item) is created.
+     * This is meant for Smartshelfs with so many Items that their string
+     * representation should not be held in memory, e.g., when writing them
+     * to a file.
+     *
+     * @param out where the string representation is written to; must not
+     *  be null
+     * @throws IOException if out throws IOException
+     */
+    public void renderTo(Appendable out) throws IOException {
+        out.append('[');
+        String separator = "";
+        for (Item it : this.store) {
+            out.append(separator);
+            it.appendTo(out);
+            separator = ", ";
+        }
+        out.append(']');
+    }
+
+    /**
+     * Returns the hash code of this Smartshelf, which depends only on which
+     * Items it contains how often, not on their order (see equals). It is
+     * made from the sum of the hash codes of the Items, which is kept up to
+     * date by the modifiers, the number of Items and the total weight, so
+     * this takes constant time except for the first call on a view or a
+     * Smartshelf made from a snapshot.
+     *
+     * @return the hash code of this Smartshelf
+     * @see java.lang.Object#hashCode()
+     */
+    @Override
+    public int hashCode() {
+        if (!this.contentHashKnown) {
+            int hash = 0;
+            for (Item it : this.store) {
+                hash += it.hashCode();
             }
+            this.contentHash = hash;
+            this.contentHashKnown = true;
         }
-        sb.append("]");
-        return sb.toString();
+        final int prime = 31;
+        int result = prime * this.contentHash + this.store.size();
+        return prime * result + Long.hashCode(totalWeightInGrammesAsLong());
+    }
+
+    /**
+     * Returns whether this Smartshelf and another object are equal. This is
+     * the case if the other object is also a Smartshelf that contains the
+     * same Items (wrt Item.equals) the same number of times, in any order,
+     * i.e., if both would have the same string representation up to the
+     * order of the Items. The storage modes do not matter.
+     *
+     * Smartshelfs with different numbers of Items, total weights or hash
+     * codes are told apart in constant time; only otherwise are the Items
+     * counted and compared.
+     *
+     * @param obj another object to be compared with
+     * @return whether this Smartshelf and obj are equal
+     * @see java.lang.Object#equals(java.lang.Object)
+     */
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof Smartshelf)) {
+            return false;
+        }
+        Smartshelf other = (Smartshelf) obj;
+        if (this.store.size() != other.store.size()
+                || totalWeightInGrammesAsLong() != other.totalWeightInGrammesAsLong()
+                || hashCode() != other.hashCode()) {
+            return false;
+        }
+        // count the Items of this Smartshelf, then count them down with the
+        // Items of the other one; equal sizes mean no count may go below 0
+        Map<Item, int[]> counts = new HashMap<>();
+        for (Item it : this.store) {
+            counts.computeIfAbsent(it, i -> new int[1])[0]++;
+        }
+        for (Item it : other.store) {
+            int[] count = counts.get(it);
+            if (count == null || count[0] == 0) {
+                return false;
+            }
+            count[0]--;
+        }
+        return true;
     }
-    
 
     /* class methods */
 
+    /**
+     * The number of array entries from which heaviestSmartshelf compares
+     * the Smartshelfs in parallel. Below this, the overhead of splitting the
+     * work outweighs the gain.
+     */
+    static final int PARALLEL_THRESHOLD = 1 << 13;
+
     /**
      * Class method to return a Smartshelf with the highest total weight from an
      * array of Smartshelfs. If we have an array with a Smartshelf of 3000 grammes
@@ -243,27 +1395,58 @@ public class Smartshelf {
      * choice is implementation-specific, and method users should not rely on
      * any particular behaviour).
      *
+     * The total weights are maintained by every Smartshelf, so each
+     * Smartshelf costs constant time regardless of its number of Items. For
+     * arrays with at least PARALLEL_THRESHOLD entries the Smartshelfs are
+     * compared in parallel on the common ForkJoinPool, after the totals that
+     * are not up to date have been computed on the calling thread; none of
+     * the Smartshelfs may be modified during the call.
+     *
+     * To find the heaviest of the same Smartshelfs repeatedly while they are
+     * modified, keep them in a Warehouse instead, which does not have to
+     * look at all of them every time.
+     *
      * @param Smartshelfs must not be null, but may contain null
      * @return one of the Smartshelfs with the highest total weight among all
      *  Smartshelfs in the parameter array; null if there is no non-null
      *  reference in Smartshelfs
      */
     public static Smartshelf heaviestSmartshelf(Smartshelf[] Smartshelfs) {
-        Smartshelf best = null;
-        int bestWeight = Integer.MIN_VALUE;
-        for (Smartshelf s : Smartshelfs) {
-            if (s == null) {
-                continue;
+        SmartshelfEvent event = new SmartshelfEvent();
+        event.begin();
+        long start = SmartshelfMetrics.start();
+        try {
+            if (Smartshelfs.length >= PARALLEL_THRESHOLD) {
+                // computing outdated totals modifies a Smartshelf, and the
+                // same Smartshelf may occur several times, so this is done
+                // here first; the parallel part only reads the totals
+                for (Smartshelf s : Smartshelfs) {
+                    if (s != null) {
+                        s.ensureAggregates();
+                    }
+                }
+                return Arrays.stream(Smartshelfs)
+                    .parallel()
+                    .filter(Objects::nonNull)
+                    .max(Comparator.comparingLong(s -> s.totalWeightInGrammes))
+                    .orElse(null);
             }
-            int w = s.totalWeightInGrammes();
-            if (best == null || w > bestWeight) {
-                best = s;
-                bestWeight = w;
+            Smartshelf best = null;
+            long bestWeight = Long.MIN_VALUE;
+            for (Smartshelf s : Smartshelfs) {
+                if (s == null) {
+                    continue;
+                }
+                long w = s.totalWeightInGrammesAsLong();
+                if (best == null || w > bestWeight) {
+                    best = s;
+                    bestWeight = w;
+                }
             }
+            return best;
+        } finally {
+            SmartshelfMetrics.stop(SmartshelfMetrics.Operation.HEAVIEST_SMARTSHELF, start);
+            event.finish(SmartshelfMetrics.Operation.HEAVIEST_SMARTSHELF, Smartshelfs.length);
         }
-        return best;
-    }
-
-
     }
 }
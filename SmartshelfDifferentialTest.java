@@ -0,0 +1,616 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Randomized differential tests for Smartshelf. Every test case applies a
+ * random sequence of operations to a Smartshelf and to a reference model,
+ * a plain list of Items with a running total, and checks after every
+ * operation that both agree. Unlike the tests in Coursework1Main, the
+ * cases grow shelves up to a maximum size (10^6 by default), so that
+ * overflow and quadratic behaviour show up, and they cover all storage
+ * modes, with and without a name index. Some cases use very heavy Items
+ * whose total weight does not fit into an int.
+ *
+ * The sizes of the cases are spread evenly on a logarithmic scale, and
+ * the last case always has the maximum size. Independent cases run in
+ * parallel on all cores. Every case has its own seed, derived from the
+ * seed of the run, so that a failing run can be repeated exactly.
+ *
+ * The report lists, for every operation, the number of calls, the average
+ * time of a call of the Smartshelf method (excluding the reference model
+ * and the checks) and the numbers of passed and failed checks:
+ *
+ *   operation,calls,nsPerCall,passed,failed
+ *
+ * Usage: java SmartshelfDifferentialTest [cases [maxSize [seed]]]
+ *
+ * @author sobia
+ */
+public class SmartshelfDifferentialTest {
+
+    /** The number of operations of every case after the shelf is filled. */
+    private static final int STEPS = 200;
+
+    /** Shelves up to this size are also compared by toString. */
+    private static final int MAX_TO_STRING_SIZE = 100_000;
+
+    /** The number of failure messages that are kept for the report. */
+    private static final int MAX_FAILURE_MESSAGES = 20;
+
+    /**
+     * An operation on the Smartshelf of a case, together with its checks
+     * against the reference model.
+     */
+    enum Operation {
+        ADD {
+            @Override
+            void run(Case c) {
+                Item item = c.random.nextInt(20) == 0 ? null : c.nextItem();
+                long start = System.nanoTime();
+                boolean result = c.shelf.add(item);
+                c.timed(this, start);
+                if (item != null) {
+                    c.modelAdd(item);
+                }
+                c.check(this, result == (item != null), "result " + result);
+            }
+        },
+        ADD_ALL {
+            @Override
+            void run(Case c) {
+                int room = Math.max(1, c.targetSize - c.model.size());
+                Item[] items = new Item[1 + c.random.nextInt(room)];
+                boolean anyNonNull = false;
+                for (int i = 0; i < items.length; i++) {
+                    if (c.random.nextInt(50) != 0) {
+                        items[i] = c.nextItem();
+                        anyNonNull = true;
+                    }
+                }
+                long start = System.nanoTime();
+                boolean result;
+                switch (c.random.nextInt(3)) {
+                    case 0:
+                        result = c.shelf.addAll(items);
+                        break;
+                    case 1:
+                        result = c.shelf.addAll(Arrays.asList(items));
+                        break;
+                    default:
+                        result = c.shelf.addAll(Arrays.stream(items));
+                        break;
+                }
+                c.timed(this, start);
+                for (Item it : items) {
+                    if (it != null) {
+                        c.modelAdd(it);
+                    }
+                }
+                c.check(this, result == anyNonNull, "result " + result);
+            }
+        },
+        EMPTY {
+            @Override
+            void run(Case c) {
+                // emptying a filled shelf should be rare
+                if (c.random.nextInt(10) != 0) {
+                    return;
+                }
+                long start = System.nanoTime();
+                c.shelf.empty();
+                c.timed(this, start);
+                c.model.clear();
+                c.modelTotal = 0;
+                c.check(this, true, "");
+            }
+        },
+        KEEP_ONLY_ITEMS_WITH {
+            @Override
+            void run(Case c) {
+                int max = c.nextThreshold();
+                long start = System.nanoTime();
+                c.shelf.keepOnlyItemsWith(max);
+                c.timed(this, start);
+                c.model.removeIf(it -> {
+                    if (it.getWeightInGrammes() > max) {
+                        c.modelTotal -= it.getWeightInGrammes();
+                        return true;
+                    }
+                    return false;
+                });
+                c.check(this, true, "");
+            }
+        },
+        REMOVE_BY_NAME {
+            @Override
+            void run(Case c) {
+                String name = c.nextName();
+                long start = System.nanoTime();
+                int result = c.shelf.removeByName(name);
+                c.timed(this, start);
+                int sizeBefore = c.model.size();
+                c.model.removeIf(it -> {
+                    if (it.getName().equals(name)) {
+                        c.modelTotal -= it.getWeightInGrammes();
+                        return true;
+                    }
+                    return false;
+                });
+                c.check(this, result == sizeBefore - c.model.size(), "result " + result);
+            }
+        },
+        MAKE_NEW_SMARTSHELF_WITH {
+            @Override
+            void run(Case c) {
+                int max = c.nextThreshold();
+                long start = System.nanoTime();
+                Smartshelf result = c.shelf.makeNewSmartshelfWith(max);
+                c.timed(this, start);
+                try {
+                    c.checkFiltered(this, result, max);
+                } finally {
+                    result.close();
+                }
+            }
+        },
+        VIEW_OF_ITEMS_WITH {
+            @Override
+            void run(Case c) {
+                int max = c.nextThreshold();
+                long start = System.nanoTime();
+                Smartshelf result = c.shelf.viewOfItemsWith(max);
+                c.timed(this, start);
+                c.checkFiltered(this, result, max);
+                // modifying the view must not modify the shelf; this is
+                // checked after the operation like for all others
+                result.add(c.nextItem());
+                result.close();
+            }
+        },
+        TOTAL_WEIGHT_IN_GRAMMES {
+            @Override
+            void run(Case c) {
+                long start = System.nanoTime();
+                long result = c.shelf.totalWeightInGrammesAsLong();
+                c.timed(this, start);
+                c.check(this, result == c.modelTotal, "expected " + c.modelTotal + ", found " + result);
+                boolean fitsInt = c.modelTotal == (int) c.modelTotal;
+                try {
+                    int exact = c.shelf.totalWeightInGrammes();
+                    c.check(this, fitsInt && exact == c.modelTotal, "int result " + exact);
+                } catch (ArithmeticException e) {
+                    c.check(this, !fitsInt, "unexpected ArithmeticException");
+                }
+            }
+        },
+        AVERAGE_WEIGHT_IN_GRAMMES {
+            @Override
+            void run(Case c) {
+                long start = System.nanoTime();
+                double result = c.shelf.averageWeightInGrammes();
+                c.timed(this, start);
+                double expected = c.model.isEmpty() ? -1.0 : c.modelTotal / (double) c.model.size();
+                c.check(this, Math.abs(result - expected) <= 1e-9 * Math.abs(expected),
+                    "expected " + expected + ", found " + result);
+            }
+        },
+        GREATEST_ITEM {
+            @Override
+            void run(Case c) {
+                long start = System.nanoTime();
+                Item result = c.shelf.greatestItem();
+                c.timed(this, start);
+                Item expected = c.model.isEmpty() ? null : Collections.max(c.model);
+                c.check(this, equal(expected, result), "expected " + expected + ", found " + result);
+            }
+        },
+        TOP_K {
+            @Override
+            void run(Case c) {
+                int k = c.random.nextInt(1 + Math.min(1000, c.model.size() + 2));
+                long start = System.nanoTime();
+                List<Item> result = c.shelf.topK(k);
+                c.timed(this, start);
+                List<Item> sorted = new ArrayList<>(c.model);
+                sorted.sort(Collections.reverseOrder());
+                List<Item> expected = sorted.subList(0, Math.min(k, sorted.size()));
+                c.check(this, expected.equals(result), "k " + k + ", found " + result.size() + " Items");
+            }
+        },
+        KTH_GREATEST {
+            @Override
+            void run(Case c) {
+                int k = 1 + c.random.nextInt(c.model.size() + 2);
+                long start = System.nanoTime();
+                Item result = c.shelf.kthGreatest(k);
+                c.timed(this, start);
+                Item expected = null;
+                if (k <= c.model.size()) {
+                    List<Item> sorted = new ArrayList<>(c.model);
+                    Collections.sort(sorted);
+                    expected = sorted.get(sorted.size() - k);
+                }
+                c.check(this, equal(expected, result), "k " + k + ", expected " + expected
+                        + ", found " + result);
+            }
+        },
+        COUNT_BY_NAME {
+            @Override
+            void run(Case c) {
+                String name = c.nextName();
+                long start = System.nanoTime();
+                int result = c.shelf.countByName(name);
+                c.timed(this, start);
+                int expected = 0;
+                for (Item it : c.model) {
+                    if (it.getName().equals(name)) {
+                        expected++;
+                    }
+                }
+                c.check(this, result == expected, "expected " + expected + ", found " + result);
+            }
+        },
+        QUERY {
+            @Override
+            void run(Case c) {
+                int a = c.nextThreshold();
+                int b = c.nextThreshold();
+                int min = Math.min(a, b);
+                int max = Math.max(a, b);
+                String prefix = c.nextName().substring(0, 2);
+                long start = System.nanoTime();
+                long total = c.shelf.query().weightBetween(min, max).nameStartsWith(prefix).total();
+                c.timed(this, start);
+                long expected = 0;
+                for (Item it : c.model) {
+                    if (it.getWeightInGrammes() >= min && it.getWeightInGrammes() <= max
+                            && it.getName().startsWith(prefix)) {
+                        expected += it.getWeightInGrammes();
+                    }
+                }
+                c.check(this, total == expected, "expected " + expected + ", found " + total);
+            }
+        },
+        TO_STRING {
+            @Override
+            void run(Case c) {
+                if (c.model.size() > MAX_TO_STRING_SIZE) {
+                    return;
+                }
+                long start = System.nanoTime();
+                String result = c.shelf.toString();
+                c.timed(this, start);
+                if (c.mode == StorageMode.LIST) {
+                    // LIST keeps the Items in the order they were added
+                    c.check(this, result.equals(c.model.toString()), "differs from the model");
+                } else {
+                    c.check(this, result.length() == c.model.toString().length(),
+                        "length " + result.length());
+                }
+            }
+        },
+        HEAVIEST_SMARTSHELF {
+            @Override
+            void run(Case c) {
+                Smartshelf other = new Smartshelf(new Item[] { c.nextItem() });
+                Smartshelf[] shelves = { null, c.shelf, other };
+                long start = System.nanoTime();
+                Smartshelf result = Smartshelf.heaviestSmartshelf(shelves);
+                c.timed(this, start);
+                long otherTotal = other.totalWeightInGrammesAsLong();
+                boolean ok = c.modelTotal > otherTotal ? result == c.shelf
+                    : c.modelTotal < otherTotal ? result == other
+                    : result == c.shelf || result == other;
+                c.check(this, ok, "picked the lighter Smartshelf");
+            }
+        };
+
+        /**
+         * Performs this operation on the Smartshelf and on the model of c
+         * and checks the result.
+         *
+         * @param c the test case
+         */
+        abstract void run(Case c);
+    }
+
+    /**
+     * The counts and timings of a run, for every operation.
+     */
+    static final class Report {
+
+        private final LongAdder[] calls = adders();
+
+        private final LongAdder[] nanos = adders();
+
+        private final LongAdder[] passed = adders();
+
+        private final LongAdder[] failed = adders();
+
+        private final ConcurrentLinkedQueue<String> failures = new ConcurrentLinkedQueue<>();
+
+        private static LongAdder[] adders() {
+            LongAdder[] result = new LongAdder[Operation.values().length];
+            for (int i = 0; i < result.length; i++) {
+                result[i] = new LongAdder();
+            }
+            return result;
+        }
+
+        /**
+         * Returns the total number of passed checks.
+         *
+         * @return the total number of passed checks
+         */
+        long passes() {
+            return sum(this.passed);
+        }
+
+        /**
+         * Returns the total number of failed checks.
+         *
+         * @return the total number of failed checks
+         */
+        long fails() {
+            return sum(this.failed);
+        }
+
+        private static long sum(LongAdder[] adders) {
+            long result = 0;
+            for (LongAdder a : adders) {
+                result += a.sum();
+            }
+            return result;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder("operation,calls,nsPerCall,passed,failed\n");
+            for (Operation op : Operation.values()) {
+                int i = op.ordinal();
+                long n = this.calls[i].sum();
+                sb.append(op).append(',').append(n).append(',')
+                    .append(n == 0 ? 0 : this.nanos[i].sum() / n).append(',')
+                    .append(this.passed[i].sum()).append(',')
+                    .append(this.failed[i].sum()).append('\n');
+            }
+            for (String f : this.failures) {
+                sb.append(f).append('\n');
+            }
+            sb.append("passed: ").append(passes()).append('\n');
+            sb.append("failed: ").append(fails()).append('\n');
+            return sb.toString();
+        }
+    }
+
+    /**
+     * A single test case: a Smartshelf, its reference model and the source
+     * of randomness for the operations on them.
+     */
+    private static final class Case {
+
+        final int number;
+
+        final Random random;
+
+        final StorageMode mode;
+
+        final int targetSize;
+
+        final Report report;
+
+        final Smartshelf shelf;
+
+        /** The reference model: the Items of shelf in the order of adding. */
+        final List<Item> model;
+
+        long modelTotal;
+
+        /** The names of the Items, with shared prefixes for QUERY. */
+        final String[] names;
+
+        /** Whether Items may weigh up to Integer.MAX_VALUE grammes. */
+        final boolean heavy;
+
+        Case(int number, long seed, int targetSize, Report report) {
+            this.number = number;
+            this.random = new Random(seed);
+            this.mode = StorageMode.values()[this.random.nextInt(StorageMode.values().length)];
+            this.targetSize = targetSize;
+            this.report = report;
+            this.shelf = new Smartshelf(this.mode);
+            if (this.random.nextBoolean()) {
+                this.shelf.enableNameIndex();
+            }
+            this.model = new ArrayList<>();
+            this.names = new String[1 + this.random.nextInt(Math.min(1000, targetSize))];
+            for (int i = 0; i < this.names.length; i++) {
+                this.names[i] = (char) ('a' + i % 26) + "" + (char) ('a' + i / 26 % 26) + i;
+            }
+            this.heavy = this.random.nextInt(5) == 0;
+        }
+
+        String nextName() {
+            return this.names[this.random.nextInt(this.names.length)];
+        }
+
+        int nextWeight() {
+            return this.heavy ? 1 + this.random.nextInt(Integer.MAX_VALUE)
+                : 1 + this.random.nextInt(10_000);
+        }
+
+        Item nextItem() {
+            return new Item(nextName(), nextWeight());
+        }
+
+        /**
+         * Returns a maximum weight for the filtering operations: mostly the
+         * weight of an Item on the shelf, so that some Items pass and some
+         * do not, and occasionally a boundary value.
+         */
+        int nextThreshold() {
+            switch (this.random.nextInt(10)) {
+                case 0:
+                    return 0;
+                case 1:
+                    return Integer.MAX_VALUE;
+                default:
+                    return this.model.isEmpty() ? nextWeight()
+                        : this.model.get(this.random.nextInt(this.model.size())).getWeightInGrammes();
+            }
+        }
+
+        void modelAdd(Item item) {
+            this.model.add(item);
+            this.modelTotal += item.getWeightInGrammes();
+        }
+
+        void timed(Operation op, long start) {
+            this.report.nanos[op.ordinal()].add(System.nanoTime() - start);
+            this.report.calls[op.ordinal()].increment();
+        }
+
+        void check(Operation op, boolean ok, String message) {
+            if (ok) {
+                this.report.passed[op.ordinal()].increment();
+            } else {
+                this.report.failed[op.ordinal()].increment();
+                if (this.report.failures.size() < MAX_FAILURE_MESSAGES) {
+                    this.report.failures.add("case " + this.number + " (" + this.mode + ", "
+                            + this.targetSize + " Items): " + op + ": " + message);
+                }
+            }
+        }
+
+        /**
+         * Checks that result has exactly the Items of the model that weigh
+         * at most max.
+         */
+        void checkFiltered(Operation op, Smartshelf result, int max) {
+            List<Item> expected = new ArrayList<>();
+            for (Item it : this.model) {
+                if (it.getWeightInGrammes() <= max) {
+                    expected.add(it);
+                }
+            }
+            check(op, sameItems(result, expected), "wrong Items for maximum " + max);
+        }
+
+        /**
+         * Checks, after every operation, the number of Items and the total
+         * weight, which the Smartshelf keeps up to date by itself.
+         */
+        void checkAggregates(Operation op) {
+            check(op, this.shelf.numberOfItems() == this.model.size(),
+                "numberOfItems " + this.shelf.numberOfItems() + " instead of " + this.model.size());
+            check(op, this.shelf.totalWeightInGrammesAsLong() == this.modelTotal,
+                "totalWeightInGrammes " + this.shelf.totalWeightInGrammesAsLong()
+                + " instead of " + this.modelTotal);
+        }
+
+        void run() {
+            Operation[] ops = Operation.values();
+            Operation op = Operation.ADD_ALL;
+            try {
+                // fill the shelf, then apply random operations
+                while (this.model.size() < this.targetSize / 2) {
+                    op.run(this);
+                    checkAggregates(op);
+                }
+                for (int step = 0; step < STEPS; step++) {
+                    op = ops[this.random.nextInt(ops.length)];
+                    op.run(this);
+                    checkAggregates(op);
+                }
+                check(op, sameItems(this.shelf, this.model), "different Items at the end");
+            } catch (RuntimeException | OutOfMemoryError e) {
+                check(op, false, e.toString());
+            } finally {
+                this.shelf.close();
+            }
+        }
+    }
+
+    /**
+     * Returns whether shelf has the same Items as expected, in any order.
+     */
+    private static boolean sameItems(Smartshelf shelf, List<Item> expected) {
+        if (shelf.numberOfItems() != expected.size()) {
+            return false;
+        }
+        Map<Item, int[]> counts = new HashMap<>();
+        for (Item it : expected) {
+            counts.computeIfAbsent(it, k -> new int[1])[0]++;
+        }
+        boolean[] ok = { true };
+        shelf.forEachItem(it -> {
+            int[] count = counts.get(it);
+            if (count == null || --count[0] < 0) {
+                ok[0] = false;
+            }
+        });
+        return ok[0];
+    }
+
+    private static boolean equal(Item a, Item b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    /**
+     * Runs cases test cases in parallel on all cores.
+     *
+     * @param cases the number of test cases
+     * @param maxSize the size of the largest case
+     * @param seed the seed of the run
+     * @return the report of the run
+     */
+    static Report run(int cases, int maxSize, long seed) {
+        Report report = new Report();
+        Random random = new Random(seed);
+        ExecutorService pool = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        for (int i = 0; i < cases; i++) {
+            // sizes evenly spread on a logarithmic scale, the last one maxSize
+            int size = (int) Math.max(1, Math.round(Math.pow(maxSize, (i + 1) / (double) cases)));
+            long caseSeed = random.nextLong();
+            int number = i;
+            pool.execute(() -> new Case(number, caseSeed, size, report).run());
+        }
+        pool.shutdown();
+        try {
+            while (!pool.awaitTermination(1, TimeUnit.MINUTES)) {
+                // keep waiting for the largest cases
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return report;
+    }
+
+    /**
+     * Runs the differential tests and prints the report.
+     *
+     * @param args optionally the number of cases (64 by default), the
+     *  maximum shelf size (10^6 by default) and the seed
+     */
+    public static void main(String[] args) {
+        int cases = args.length > 0 ? Integer.parseInt(args[0]) : 64;
+        int maxSize = args.length > 1 ? Integer.parseInt(args[1]) : 1_000_000;
+        long seed = args.length > 2 ? Long.parseLong(args[2]) : System.nanoTime();
+        System.out.println("seed " + seed);
+        Report report = run(cases, maxSize, seed);
+        System.out.print(report);
+        if (report.fails() > 0) {
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,45 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A Java Flight Recorder event for one call of an expensive Smartshelf
+ * method (toString, makeNewSmartshelfWith or heaviestSmartshelf). Like all
+ * JFR events, it costs next to nothing unless a recording with this event
+ * enabled is running.
+ *
+ * @author sobia
+ */
+@Name("smartshelf.Operation")
+@Label("Smartshelf Operation")
+@Category("Smartshelf")
+@Description("A call of an expensive Smartshelf method")
+final class SmartshelfEvent extends Event {
+
+    @Label("Operation")
+    @Description("The name of the Smartshelf method")
+    String operation;
+
+    @Label("Size")
+    @Description("The number of Items of the Smartshelf, or the number of Smartshelfs compared")
+    int size;
+
+    /**
+     * Commits this event if it is enabled and long enough to be recorded.
+     * Callers for whom the size is expensive to compute (e.g., for a view
+     * of a Smartshelf) check shouldCommit() before computing it.
+     *
+     * @param op the called method
+     * @param size the number of Items of the Smartshelf, or the number of
+     *  Smartshelfs compared by heaviestSmartshelf
+     */
+    void finish(SmartshelfMetrics.Operation op, int size) {
+        if (shouldCommit()) {
+            this.operation = op.methodName();
+            this.size = size;
+            commit();
+        }
+    }
+}
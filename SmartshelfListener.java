@@ -0,0 +1,50 @@
+/**
+ * A SmartshelfListener is notified of every modification of the Smartshelfs
+ * it has been added to (see Smartshelf.addListener). The notifications are
+ * sent by the thread that modifies the Smartshelf, after the modification,
+ * so the Smartshelf can be queried for its new state. Listeners should
+ * return quickly since the modification does not complete before they do.
+ *
+ * All methods do nothing by default, so implementations only need to
+ * override the ones they are interested in.
+ *
+ * @author sobia
+ */
+public interface SmartshelfListener {
+
+    /**
+     * Called after item has been added to shelf, by add or by one of the
+     * addAll methods (once for every non-null Item).
+     *
+     * @param shelf the modified Smartshelf
+     * @param item the added Item
+     */
+    default void itemAdded(Smartshelf shelf, Item item) {
+    }
+
+    /**
+     * Called after shelf has been emptied.
+     *
+     * @param shelf the modified Smartshelf
+     */
+    default void emptied(Smartshelf shelf) {
+    }
+
+    /**
+     * Called after shelf.keepOnlyItemsWith(maxItemWeightInGrammes).
+     *
+     * @param shelf the modified Smartshelf
+     * @param maxItemWeightInGrammes the argument of keepOnlyItemsWith
+     */
+    default void keptOnlyItemsWith(Smartshelf shelf, int maxItemWeightInGrammes) {
+    }
+
+    /**
+     * Called after shelf.removeByName(name) has removed at least one Item.
+     *
+     * @param shelf the modified Smartshelf
+     * @param name the argument of removeByName
+     */
+    default void removedByName(Smartshelf shelf, String name) {
+    }
+}
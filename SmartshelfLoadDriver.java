@@ -0,0 +1,391 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A load driver that simulates a production workload on many Smartshelfs:
+ * several threads pick random Smartshelfs and call random operations on
+ * them according to a configurable operation mix, e.g., 80% add, 10%
+ * aggregates, 5% makeNewSmartshelfWith and 5% keepOnlyItemsWith (the
+ * default). Every Smartshelf is guarded by its own lock, so threads only
+ * wait for each other when they pick the same Smartshelf.
+ *
+ * For every operation, the throughput and the 50th, 99th and 99.9th
+ * percentile and maximum latency are reported. The latencies are recorded
+ * in histograms with 32 buckets per power of two, i.e., with an error of
+ * at most about 3%. The results are printed and appended, together with
+ * the configuration, as CSV lines to a file, so that runs can be compared
+ * with each other:
+ *
+ *   time,mix,mode,distribution,duplicates,shelves,threads,operation,
+ *   calls,opsPerSecond,p50Nanos,p99Nanos,p999Nanos,maxNanos
+ *
+ * Usage: java SmartshelfLoadDriver [name=value ...] with the options
+ *
+ *   mix=ADD:80,TOTAL_WEIGHT_IN_GRAMMES:4,...  the operations and their
+ *                                             relative frequencies
+ *   mode=LIST              the storage mode of the Smartshelfs
+ *   distribution=UNIFORM   the weight distribution (UNIFORM, NARROW, SKEWED)
+ *   duplicates=0.5         the fraction of Items that repeat earlier ones
+ *   shelves=1000           the number of Smartshelfs
+ *   items=1000             the initial number of Items per Smartshelf
+ *   threads=4              the number of threads calling operations
+ *   warmup=2               the seconds before measuring starts
+ *   seconds=10             the seconds of measuring
+ *   seed=1                 the seed for the random numbers
+ *   out=smartshelf-load.csv  the file the results are appended to
+ *
+ * @author sobia
+ */
+public class SmartshelfLoadDriver {
+
+    /** The number of distinct Items the operations draw from. */
+    private static final int ITEM_POOL_SIZE = 1 << 20;
+
+    /**
+     * An operation called by the driver.
+     */
+    enum Operation {
+        ADD {
+            @Override
+            long run(Smartshelf shelf, Item item, SplittableRandom random) {
+                return shelf.add(item) ? 1 : 0;
+            }
+        },
+        ADD_ALL {
+            @Override
+            long run(Smartshelf shelf, Item item, SplittableRandom random) {
+                return shelf.addAll(new Item[] { item, item, item, item }) ? 1 : 0;
+            }
+        },
+        TOTAL_WEIGHT_IN_GRAMMES {
+            @Override
+            long run(Smartshelf shelf, Item item, SplittableRandom random) {
+                return shelf.totalWeightInGrammesAsLong();
+            }
+        },
+        AVERAGE_WEIGHT_IN_GRAMMES {
+            @Override
+            long run(Smartshelf shelf, Item item, SplittableRandom random) {
+                return (long) shelf.averageWeightInGrammes();
+            }
+        },
+        GREATEST_ITEM {
+            @Override
+            long run(Smartshelf shelf, Item item, SplittableRandom random) {
+                Item greatest = shelf.greatestItem();
+                return greatest == null ? 0 : greatest.getWeightInGrammes();
+            }
+        },
+        MAKE_NEW_SMARTSHELF_WITH {
+            @Override
+            long run(Smartshelf shelf, Item item, SplittableRandom random) {
+                try (Smartshelf result = shelf.makeNewSmartshelfWith(item.getWeightInGrammes())) {
+                    return result.numberOfItems();
+                }
+            }
+        },
+        KEEP_ONLY_ITEMS_WITH {
+            @Override
+            long run(Smartshelf shelf, Item item, SplittableRandom random) {
+                // mostly keep light Items only, as when heavy ones are
+                // moved to another shelf; sometimes keep all
+                shelf.keepOnlyItemsWith(random.nextInt(4) == 0 ? Integer.MAX_VALUE
+                    : item.getWeightInGrammes());
+                return shelf.numberOfItems();
+            }
+        },
+        REMOVE_BY_NAME {
+            @Override
+            long run(Smartshelf shelf, Item item, SplittableRandom random) {
+                return shelf.removeByName(item.getName());
+            }
+        },
+        TO_STRING {
+            @Override
+            long run(Smartshelf shelf, Item item, SplittableRandom random) {
+                return shelf.toString().length();
+            }
+        },
+        EMPTY {
+            @Override
+            long run(Smartshelf shelf, Item item, SplittableRandom random) {
+                shelf.empty();
+                return 0;
+            }
+        };
+
+        /**
+         * Calls the operation once.
+         *
+         * @param shelf the Smartshelf to call the operation on; locked by
+         *  the calling thread
+         * @param item a random Item, e.g., the one to be added
+         * @param random the random numbers of the calling thread
+         * @return a value derived from the result, to be consumed
+         */
+        abstract long run(Smartshelf shelf, Item item, SplittableRandom random);
+    }
+
+    /**
+     * A histogram of latencies in nanoseconds with 32 buckets per power of
+     * two. It is not thread-safe; every thread records into its own one.
+     */
+    static final class LatencyHistogram {
+
+        private static final int SUB_BUCKET_BITS = 5;
+
+        private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+        private final long[] counts = new long[SUB_BUCKETS * (64 - SUB_BUCKET_BITS)];
+
+        private long total;
+
+        private long max;
+
+        void record(long nanos) {
+            long v = Math.max(0, nanos);
+            this.counts[indexOf(v)]++;
+            this.total++;
+            this.max = Math.max(this.max, v);
+        }
+
+        void add(LatencyHistogram other) {
+            for (int i = 0; i < this.counts.length; i++) {
+                this.counts[i] += other.counts[i];
+            }
+            this.total += other.total;
+            this.max = Math.max(this.max, other.max);
+        }
+
+        long total() {
+            return this.total;
+        }
+
+        long max() {
+            return this.max;
+        }
+
+        /**
+         * Returns an upper bound of the given percentile, at most about 3%
+         * too high.
+         *
+         * @param percentile between 0 and 100
+         * @return the percentile in nanoseconds; 0 if nothing was recorded
+         */
+        long percentile(double percentile) {
+            if (this.total == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(this.total * percentile / 100));
+            long seen = 0;
+            for (int i = 0; i < this.counts.length; i++) {
+                seen += this.counts[i];
+                if (seen >= rank) {
+                    return Math.min(highestValueOf(i), this.max);
+                }
+            }
+            return this.max;
+        }
+
+        private static int indexOf(long v) {
+            if (v < SUB_BUCKETS) {
+                return (int) v;
+            }
+            int exponent = 63 - Long.numberOfLeadingZeros(v);
+            int shift = exponent - SUB_BUCKET_BITS;
+            return SUB_BUCKETS * (shift + 1) + (int) (v >>> shift) - SUB_BUCKETS;
+        }
+
+        private static long highestValueOf(int index) {
+            if (index < 2 * SUB_BUCKETS) {
+                return index;
+            }
+            int shift = index / SUB_BUCKETS - 1;
+            long top = index % SUB_BUCKETS + SUB_BUCKETS;
+            return ((top + 1) << shift) - 1;
+        }
+    }
+
+    /**
+     * Runs the load driver.
+     *
+     * @param args options of the form name=value, see above
+     * @throws IOException if the results cannot be written
+     * @throws InterruptedException if interrupted while waiting for the
+     *  threads
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (eq < 0) {
+                throw new IllegalArgumentException("Expected name=value, found " + arg);
+            }
+            options.put(arg.substring(0, eq), arg.substring(eq + 1));
+        }
+        String mixOption = options.getOrDefault("mix",
+            "ADD:80,TOTAL_WEIGHT_IN_GRAMMES:4,AVERAGE_WEIGHT_IN_GRAMMES:3,GREATEST_ITEM:3,"
+            + "MAKE_NEW_SMARTSHELF_WITH:5,KEEP_ONLY_ITEMS_WITH:5");
+        Operation[] mix = parseMix(mixOption);
+        StorageMode mode = StorageMode.valueOf(options.getOrDefault("mode", "LIST"));
+        SmartshelfWorkload.Distribution distribution =
+            SmartshelfWorkload.Distribution.valueOf(options.getOrDefault("distribution", "UNIFORM"));
+        double duplicates = Double.parseDouble(options.getOrDefault("duplicates", "0.5"));
+        int shelfCount = Integer.parseInt(options.getOrDefault("shelves", "1000"));
+        int itemsPerShelf = Integer.parseInt(options.getOrDefault("items", "1000"));
+        int threadCount = Integer.parseInt(options.getOrDefault("threads", "4"));
+        double warmupSeconds = Double.parseDouble(options.getOrDefault("warmup", "2"));
+        double seconds = Double.parseDouble(options.getOrDefault("seconds", "10"));
+        long seed = Long.parseLong(options.getOrDefault("seed", "1"));
+        Path out = Paths.get(options.getOrDefault("out", "smartshelf-load.csv"));
+
+        Item[] items = SmartshelfWorkload.makeItems(ITEM_POOL_SIZE, distribution, duplicates, seed);
+        Smartshelf[] shelves = new Smartshelf[shelfCount];
+        ReentrantLock[] locks = new ReentrantLock[shelfCount];
+        SplittableRandom setup = new SplittableRandom(seed);
+        for (int i = 0; i < shelfCount; i++) {
+            shelves[i] = new Smartshelf(mode, itemsPerShelf);
+            for (int j = 0; j < itemsPerShelf; j++) {
+                shelves[i].add(items[setup.nextInt(items.length)]);
+            }
+            locks[i] = new ReentrantLock();
+        }
+
+        Map<Operation, LatencyHistogram> results = run(shelves, locks, items, mix, threadCount,
+            (long) (warmupSeconds * 1e9), (long) (seconds * 1e9), seed);
+
+        String config = String.join(",", Instant.now().toString(), '"' + mixOption + '"',
+            mode.toString(), distribution.toString(), Double.toString(duplicates),
+            Integer.toString(shelfCount), Integer.toString(threadCount));
+        boolean newFile = !Files.exists(out);
+        try (BufferedWriter w = Files.newBufferedWriter(out, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+            if (newFile) {
+                w.write("time,mix,mode,distribution,duplicates,shelves,threads,operation,"
+                        + "calls,opsPerSecond,p50Nanos,p99Nanos,p999Nanos,maxNanos");
+                w.newLine();
+            }
+            System.out.println("operation,calls,opsPerSecond,p50Nanos,p99Nanos,p999Nanos,maxNanos");
+            for (Map.Entry<Operation, LatencyHistogram> e : results.entrySet()) {
+                LatencyHistogram h = e.getValue();
+                String line = String.format("%s,%d,%.0f,%d,%d,%d,%d", e.getKey(), h.total(),
+                    h.total() / seconds, h.percentile(50), h.percentile(99), h.percentile(99.9),
+                    h.max());
+                System.out.println(line);
+                w.write(config + "," + line);
+                w.newLine();
+            }
+        }
+        for (Smartshelf s : shelves) {
+            s.close();
+        }
+        System.out.println("results appended to " + out);
+    }
+
+    /**
+     * Parses an operation mix such as "ADD:80,GREATEST_ITEM:20".
+     *
+     * @param mix the operations with their relative frequencies
+     * @return an array in which every operation occurs as often as its
+     *  frequency, so that a uniformly chosen element follows the mix
+     * @throws IllegalArgumentException if mix is malformed
+     */
+    static Operation[] parseMix(String mix) {
+        Map<Operation, Integer> weights = new EnumMap<>(Operation.class);
+        int sum = 0;
+        for (String part : mix.split(",")) {
+            String[] opAndWeight = part.trim().split(":");
+            if (opAndWeight.length != 2) {
+                throw new IllegalArgumentException("Expected OPERATION:weight, found " + part);
+            }
+            int weight = Integer.parseInt(opAndWeight[1].trim());
+            if (weight < 0) {
+                throw new IllegalArgumentException("Expected weight >= 0, found " + weight);
+            }
+            weights.merge(Operation.valueOf(opAndWeight[0].trim()), weight, Integer::sum);
+            sum += weight;
+        }
+        if (sum == 0) {
+            throw new IllegalArgumentException("The mix must contain an operation");
+        }
+        Operation[] result = new Operation[sum];
+        int i = 0;
+        for (Map.Entry<Operation, Integer> e : weights.entrySet()) {
+            for (int j = 0; j < e.getValue(); j++) {
+                result[i++] = e.getKey();
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Lets threadCount threads call random operations on random shelves,
+     * first for warmupNanos without and then for nanos with recording the
+     * latencies.
+     *
+     * @return the latencies per operation, for the operations in mix
+     */
+    static Map<Operation, LatencyHistogram> run(Smartshelf[] shelves, ReentrantLock[] locks,
+            Item[] items, Operation[] mix, int threadCount, long warmupNanos, long nanos,
+            long seed) throws InterruptedException {
+        long measureFrom = System.nanoTime() + warmupNanos;
+        long end = measureFrom + nanos;
+        List<Map<Operation, LatencyHistogram>> perThread = new ArrayList<>();
+        Thread[] threads = new Thread[threadCount];
+        long[] sink = new long[threadCount];
+        for (int t = 0; t < threadCount; t++) {
+            Map<Operation, LatencyHistogram> histograms = new EnumMap<>(Operation.class);
+            for (Operation op : mix) {
+                histograms.putIfAbsent(op, new LatencyHistogram());
+            }
+            perThread.add(histograms);
+            SplittableRandom random = new SplittableRandom(seed + 31 * (t + 1));
+            int thread = t;
+            threads[t] = new Thread(() -> {
+                long consumed = 0;
+                long now = System.nanoTime();
+                while (now < end) {
+                    Operation op = mix[random.nextInt(mix.length)];
+                    int s = random.nextInt(shelves.length);
+                    Item item = items[random.nextInt(items.length)];
+                    // the latency includes waiting for the lock, as it
+                    // would for a caller in production
+                    long start = now;
+                    locks[s].lock();
+                    try {
+                        consumed += op.run(shelves[s], item, random);
+                    } finally {
+                        locks[s].unlock();
+                    }
+                    now = System.nanoTime();
+                    if (start >= measureFrom) {
+                        histograms.get(op).record(now - start);
+                    }
+                }
+                sink[thread] = consumed;
+            }, "SmartshelfLoadDriver-" + t);
+            threads[t].start();
+        }
+        Map<Operation, LatencyHistogram> result = new EnumMap<>(Operation.class);
+        for (int t = 0; t < threadCount; t++) {
+            threads[t].join();
+            for (Map.Entry<Operation, LatencyHistogram> e : perThread.get(t).entrySet()) {
+                result.computeIfAbsent(e.getKey(), k -> new LatencyHistogram()).add(e.getValue());
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,669 @@
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A SmartshelfLog makes the modifications of a Smartshelf durable. Every
+ * add, addAll, empty, keepOnlyItemsWith and removeByName is appended as a
+ * small record to a write-ahead log file. When the log grows beyond a threshold, it is
+ * compacted: the log is rotated, i.e., a new log file is started, and the
+ * Smartshelf as it was at that point is written as a SmartshelfSnapshot by
+ * a background thread. On startup, the latest snapshot is loaded and the
+ * logs written since are replayed on top of it.
+ *
+ * With a positive sync interval, records are collected in memory and
+ * written and forced to disk together by a background thread (group
+ * commit), so that a modification only pays for encoding its record;
+ * after a crash, at most the modifications of the last interval are lost.
+ * With a sync interval of 0, every record is forced to disk before the
+ * modification returns. sync() forces all records so far in either case.
+ * If the log cannot be written, the modification still takes place and
+ * the failure is reported by the next sync, compact or close; no records
+ * are written after that, since they would follow lost ones.
+ * In both cases, the modification that crosses the compaction threshold
+ * also pays for copying the Items of the Smartshelf in memory, but never
+ * for writing the snapshot.
+ *
+ * The files in the log directory are snapshot-g and log-g, where g is a
+ * generation number that is increased by every compaction; log-g holds the
+ * modifications after those in log-(g - 1), and snapshot-g (if any) holds
+ * the Smartshelf before the modifications in log-g. A log file is complete
+ * before the next one is created, and a snapshot is complete before it
+ * gets its name, so a crash during compaction loses nothing: recovery
+ * starts from the latest snapshot and replays every later log.
+ *
+ * Records (all ints big-endian):
+ *
+ *   add:   ADD, weight (int), length of the name in bytes (int), UTF-8 name
+ *   empty: EMPTY
+ *   keep:  KEEP, maximum weight (int)
+ *   remove by name: REMOVE_NAME, length of the name in bytes (int), UTF-8 name
+ *
+ * @author sobia
+ */
+public class SmartshelfLog implements SmartshelfListener, Closeable {
+
+    private static final byte ADD = 1;
+
+    private static final byte EMPTY = 2;
+
+    private static final byte KEEP = 3;
+
+    private static final byte REMOVE_NAME = 4;
+
+    private static final String SNAPSHOT_PREFIX = "snapshot-";
+
+    private static final String LOG_PREFIX = "log-";
+
+    private final Path directory;
+
+    private final long compactionThresholdBytes;
+
+    private final Smartshelf shelf;
+
+    /**
+     * Records not yet written to the log file. Guarded by itself, like
+     * logSize, generation, rotation and compacting, so that modifications
+     * only wait for each other and not for disk writes.
+     */
+    private final ByteArrayOutputStream pending = new ByteArrayOutputStream();
+
+    private final DataOutputStream pendingOut = new DataOutputStream(this.pending);
+
+    /** The number of bytes in the current log, including pending records. */
+    private long logSize;
+
+    /** The generation of the log the pending records belong to. */
+    private long generation;
+
+    /** A rotation not yet carried out by writePending; null if none. */
+    private Rotation rotation;
+
+    /** Whether a compaction has started and its snapshot is not written yet. */
+    private boolean compacting;
+
+    /**
+     * Completed when the snapshot of the running compaction has been
+     * written, or could not be written; null if no compaction has started.
+     */
+    private CompletableFuture<Void> snapshotWritten;
+
+    /**
+     * Guards log and the writes to it; never held while pending is waited
+     * for by a modification, only the other way round.
+     */
+    private final Object diskLock = new Object();
+
+    /** The log file the records are written to, opened for appending. */
+    private FileChannel log;
+
+    /** Whether every record is synced before the modification returns. */
+    private final boolean syncEveryRecord;
+
+    /** Performs the group commits and writes the snapshots. */
+    private final ScheduledExecutorService background;
+
+    /**
+     * The first exception of writing the log or a snapshot, reported by the
+     * next sync, compact or close. Once set, no more records are written.
+     */
+    private volatile IOException failure;
+
+    /**
+     * Opens the log in directory, creating the directory if necessary, and
+     * restores the Smartshelf from it.
+     *
+     * @param directory where the snapshot and log files are kept; must
+     *  not be null
+     * @param syncIntervalMillis how often pending records are forced to
+     *  disk; 0 to force every record right away
+     * @param compactionThresholdBytes the size of the log file beyond which
+     *  it is compacted into a snapshot
+     * @throws IOException if the files cannot be read or written
+     * @throws IllegalArgumentException if syncIntervalMillis is negative
+     */
+    public SmartshelfLog(Path directory, long syncIntervalMillis, long compactionThresholdBytes)
+            throws IOException {
+        if (syncIntervalMillis < 0) {
+            throw new IllegalArgumentException("Expected syncIntervalMillis >= 0, found "
+                    + syncIntervalMillis);
+        }
+        this.directory = directory;
+        this.compactionThresholdBytes = compactionThresholdBytes;
+        Files.createDirectories(directory);
+        deleteUnfinishedSnapshots();
+
+        this.generation = latestGeneration();
+        Path snapshot = snapshotFile(this.generation);
+        this.shelf = Files.exists(snapshot) ? SmartshelfSnapshot.load(snapshot) : new Smartshelf();
+        // logs older than the last one were complete before it was created
+        while (Files.exists(logFile(this.generation + 1))) {
+            try (FileChannel older = FileChannel.open(logFile(this.generation), StandardOpenOption.READ)) {
+                replay(older);
+            }
+            this.generation++;
+        }
+        this.log = FileChannel.open(logFile(this.generation), StandardOpenOption.CREATE,
+            StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.logSize = replay(this.log);
+        // a record that was cut off by a crash is dropped
+        this.log.truncate(this.logSize);
+        this.log.position(this.logSize);
+
+        this.shelf.addListener(this);
+        this.syncEveryRecord = syncIntervalMillis == 0;
+        this.background = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "SmartshelfLog " + directory);
+            t.setDaemon(true);
+            return t;
+        });
+        if (!this.syncEveryRecord) {
+            this.background.scheduleWithFixedDelay(this::syncInBackground,
+                syncIntervalMillis, syncIntervalMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Returns the Smartshelf whose modifications are logged. Only
+     * modifications of this very object are logged.
+     *
+     * @return the logged Smartshelf
+     */
+    public Smartshelf shelf() {
+        return this.shelf;
+    }
+
+    /* SmartshelfListener */
+
+    @Override
+    public void itemAdded(Smartshelf shelf, Item item) {
+        byte[] name = item.getName().getBytes(StandardCharsets.UTF_8);
+        boolean rotated;
+        synchronized (this.pending) {
+            try {
+                this.pendingOut.writeByte(ADD);
+                this.pendingOut.writeInt(item.getWeightInGrammes());
+                this.pendingOut.writeInt(name.length);
+                this.pendingOut.write(name);
+            } catch (IOException e) {
+                // ByteArrayOutputStream does not throw IOException
+                throw new UncheckedIOException(e);
+            }
+            rotated = appended(1 + 4 + 4 + name.length);
+        }
+        afterAppend(rotated);
+    }
+
+    @Override
+    public void emptied(Smartshelf shelf) {
+        boolean rotated;
+        synchronized (this.pending) {
+            this.pending.write(EMPTY);
+            rotated = appended(1);
+        }
+        afterAppend(rotated);
+    }
+
+    @Override
+    public void keptOnlyItemsWith(Smartshelf shelf, int maxItemWeightInGrammes) {
+        boolean rotated;
+        synchronized (this.pending) {
+            try {
+                this.pendingOut.writeByte(KEEP);
+                this.pendingOut.writeInt(maxItemWeightInGrammes);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            rotated = appended(1 + 4);
+        }
+        afterAppend(rotated);
+    }
+
+    @Override
+    public void removedByName(Smartshelf shelf, String name) {
+        byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+        boolean rotated;
+        synchronized (this.pending) {
+            try {
+                this.pendingOut.writeByte(REMOVE_NAME);
+                this.pendingOut.writeInt(bytes.length);
+                this.pendingOut.write(bytes);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            rotated = appended(1 + 4 + bytes.length);
+        }
+        afterAppend(rotated);
+    }
+
+    /* Durability */
+
+    /**
+     * Writes all pending records to the log file and forces them to disk.
+     *
+     * @throws IOException if the log file cannot be written, now or during
+     *  an earlier background sync or compaction
+     */
+    public void sync() throws IOException {
+        Rotation r = writePending();
+        if (r != null) {
+            this.background.execute(() -> writeSnapshotInBackground(r));
+        }
+    }
+
+    /**
+     * Writes the Smartshelf as a new snapshot and starts a new, empty log,
+     * and waits until the snapshot is complete. Must not be called while the
+     * Smartshelf is being modified by another thread.
+     *
+     * @throws IOException if the files cannot be written
+     */
+    public void compact() throws IOException {
+        CompletableFuture<Void> written;
+        while (true) {
+            checkFailure();
+            CompletableFuture<Void> running;
+            synchronized (this.pending) {
+                if (!this.compacting) {
+                    rotate();
+                    written = this.snapshotWritten;
+                    break;
+                }
+                running = this.snapshotWritten;
+            }
+            // a compaction started by a modification is still running
+            await(running);
+        }
+        // whoever carries out the rotation, this or a background sync,
+        // submits the snapshot, and written is completed when it is done
+        sync();
+        await(written);
+        checkFailure();
+    }
+
+    /**
+     * Syncs the pending records, waits for a running compaction, stops
+     * logging modifications and closes the log file.
+     *
+     * @throws IOException if the pending records cannot be written, now or
+     *  earlier
+     */
+    @Override
+    public void close() throws IOException {
+        this.shelf.removeListener(this);
+        try {
+            sync();
+        } finally {
+            this.background.shutdown();
+            try {
+                this.background.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            synchronized (this.diskLock) {
+                this.log.close();
+            }
+        }
+        checkFailure();
+    }
+
+    /* Helpers */
+
+    /**
+     * Called with pending held after a record of the given length has been
+     * appended to it; starts a compaction if the log has grown too large
+     * and no compaction is running.
+     *
+     * @param length the length of the record in bytes
+     * @return whether a compaction was started
+     */
+    private boolean appended(int length) {
+        this.logSize += length;
+        if (this.logSize > this.compactionThresholdBytes && !this.compacting) {
+            rotate();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Called after a record has been appended, without holding pending;
+     * syncs if every record is to be synced, and otherwise has a rotation
+     * carried out by the background thread. Does not throw: the
+     * modification has already been made and the other listeners are still
+     * to be notified, so a failure is reported by the next sync or close.
+     *
+     * @param rotated whether the record started a compaction
+     */
+    private void afterAppend(boolean rotated) {
+        if (this.syncEveryRecord) {
+            syncInBackground();
+        } else if (rotated) {
+            this.background.execute(this::syncInBackground);
+        }
+    }
+
+    /**
+     * Called with pending held; ends the current generation after the
+     * pending records. The Items are copied right away, while the
+     * Smartshelf matches the records so far; the copy is written as the
+     * snapshot of the next generation later, by writeSnapshotInBackground.
+     */
+    private void rotate() {
+        Smartshelf state = this.shelf.makeNewSmartshelfWith(Integer.MAX_VALUE);
+        this.generation++;
+        this.rotation = new Rotation(this.pending.toByteArray(), state, this.generation);
+        this.pending.reset();
+        this.logSize = 0;
+        this.compacting = true;
+        this.snapshotWritten = this.rotation.written;
+    }
+
+    /**
+     * Writes the pending records and forces them to disk. If a rotation is
+     * due, the records before it are written to the current log and the
+     * others to a new one. Does nothing if there are no such records, so
+     * the periodic sync of an idle log does not force anything.
+     *
+     * If writing fails, the failure is recorded, so that no more records
+     * are written after the lost ones, and a rotation that was taken is
+     * given up, so that compact() does not wait for it forever.
+     *
+     * @return the rotation carried out, whose snapshot is still to be
+     *  written; null if there was none
+     * @throws IOException if the log file cannot be written
+     */
+    private Rotation writePending() throws IOException {
+        synchronized (this.diskLock) {
+            IOException failed = this.failure;
+            if (failed != null) {
+                // records after lost ones are useless, so they are dropped
+                // instead of piling up
+                Rotation r;
+                synchronized (this.pending) {
+                    r = this.rotation;
+                    this.rotation = null;
+                    this.pending.reset();
+                }
+                if (r != null) {
+                    finishCompaction(r, failed);
+                }
+                checkFailure();
+            }
+            Rotation r;
+            byte[] records;
+            synchronized (this.pending) {
+                r = this.rotation;
+                this.rotation = null;
+                records = this.pending.toByteArray();
+                this.pending.reset();
+            }
+            if (r == null && records.length == 0) {
+                return null;
+            }
+            try {
+                if (r != null) {
+                    writeFully(r.tail);
+                    this.log.force(false);
+                    FileChannel nextLog = FileChannel.open(logFile(r.generation), StandardOpenOption.CREATE,
+                        StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+                    this.log.close();
+                    this.log = nextLog;
+                }
+                writeFully(records);
+                this.log.force(false);
+            } catch (IOException | RuntimeException e) {
+                IOException cause = e instanceof IOException ? (IOException) e : new IOException(e);
+                fail(cause);
+                if (r != null) {
+                    finishCompaction(r, cause);
+                }
+                throw e;
+            }
+            return r;
+        }
+    }
+
+    private void writeFully(byte[] records) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(records);
+        while (buffer.hasRemaining()) {
+            this.log.write(buffer);
+        }
+    }
+
+    /**
+     * Writes the snapshot of a rotation whose log has been started and
+     * deletes the files of older generations, which are not needed any
+     * more. Runs on the background thread.
+     */
+    private void writeSnapshotInBackground(Rotation r) {
+        try {
+            Path tmp = this.directory.resolve(SNAPSHOT_PREFIX + r.generation + ".tmp");
+            SmartshelfSnapshot.write(r.state, tmp);
+            try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+                channel.force(true);
+            }
+            // from here on, the new snapshot is the one used for recovery
+            Files.move(tmp, snapshotFile(r.generation), StandardCopyOption.ATOMIC_MOVE);
+            deleteGenerationsBefore(r.generation);
+            finishCompaction(r, null);
+        } catch (IOException e) {
+            fail(e);
+            finishCompaction(r, e);
+        } catch (RuntimeException e) {
+            IOException cause = new IOException(e);
+            fail(cause);
+            finishCompaction(r, cause);
+        }
+    }
+
+    /**
+     * Ends the compaction of a rotation, successfully or not, so that the
+     * next one can start, and wakes up whoever waits for its snapshot.
+     *
+     * @param r the rotation
+     * @param e why its snapshot was not written; null if it was
+     */
+    private void finishCompaction(Rotation r, IOException e) {
+        r.state.close();
+        synchronized (this.pending) {
+            this.compacting = false;
+        }
+        if (e == null) {
+            r.written.complete(null);
+        } else {
+            r.written.completeExceptionally(e);
+        }
+    }
+
+    private void syncInBackground() {
+        try {
+            sync();
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    private void fail(IOException e) {
+        if (this.failure == null) {
+            this.failure = e;
+        }
+    }
+
+    /**
+     * Waits until the snapshot of a compaction has been written.
+     *
+     * @param written completed when the snapshot has been written
+     * @throws IOException if the snapshot could not be written
+     */
+    private static void await(CompletableFuture<Void> written) throws IOException {
+        try {
+            written.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for compaction");
+        } catch (ExecutionException e) {
+            throw new IOException("Compaction of SmartshelfLog failed", e.getCause());
+        }
+    }
+
+    private void checkFailure() throws IOException {
+        IOException e = this.failure;
+        if (e != null) {
+            throw new IOException("Writing SmartshelfLog failed", e);
+        }
+    }
+
+    /**
+     * Applies the complete records in a log file to the Smartshelf. A
+     * record that is cut off or malformed, e.g., with a weight that no Item
+     * can have, ends the valid part of the log.
+     *
+     * @param channel the log file, positioned at its start
+     * @return the length of the complete records in bytes
+     * @throws IOException if the log file cannot be read
+     */
+    private long replay(FileChannel channel) throws IOException {
+        // the log is kept small by compaction, so it can be read at once
+        ByteBuffer records = ByteBuffer.allocate(Math.toIntExact(channel.size()));
+        while (records.hasRemaining() && channel.read(records) >= 0) {
+            // keep reading
+        }
+        records.flip();
+        int complete = 0;
+        while (records.hasRemaining()) {
+            byte type = records.get();
+            if (type == ADD && records.remaining() >= 8) {
+                int weight = records.getInt();
+                int length = records.getInt();
+                if (weight <= 0 || length < 0 || records.remaining() < length) {
+                    break;
+                }
+                byte[] name = new byte[length];
+                records.get(name);
+                this.shelf.add(Item.of(new String(name, StandardCharsets.UTF_8), weight));
+            } else if (type == EMPTY) {
+                this.shelf.empty();
+            } else if (type == KEEP && records.remaining() >= 4) {
+                this.shelf.keepOnlyItemsWith(records.getInt());
+            } else if (type == REMOVE_NAME && records.remaining() >= 4) {
+                int length = records.getInt();
+                if (length < 0 || records.remaining() < length) {
+                    break;
+                }
+                byte[] name = new byte[length];
+                records.get(name);
+                this.shelf.removeByName(new String(name, StandardCharsets.UTF_8));
+            } else {
+                break;
+            }
+            complete = records.position();
+        }
+        return complete;
+    }
+
+    /**
+     * Deletes the snapshot and log files of the generations before g.
+     *
+     * @param g the oldest generation to keep
+     * @throws IOException if the directory cannot be read
+     */
+    private void deleteGenerationsBefore(long g) throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(this.directory)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                String prefix = name.startsWith(SNAPSHOT_PREFIX) ? SNAPSHOT_PREFIX
+                    : name.startsWith(LOG_PREFIX) ? LOG_PREFIX : null;
+                if (prefix == null) {
+                    continue;
+                }
+                String suffix = name.substring(prefix.length());
+                if (!suffix.isEmpty() && suffix.chars().allMatch(Character::isDigit)
+                        && Long.parseLong(suffix) < g) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        }
+    }
+
+    /**
+     * Deletes the temporary files of snapshots that were not finished, e.g.,
+     * because of a crash during compaction.
+     *
+     * @throws IOException if the directory cannot be read
+     */
+    private void deleteUnfinishedSnapshots() throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(this.directory,
+                SNAPSHOT_PREFIX + "*.tmp")) {
+            for (Path file : files) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    /**
+     * Returns the highest generation with a snapshot file; 0 if there is
+     * none.
+     *
+     * @return the generation to recover from
+     * @throws IOException if the directory cannot be read
+     */
+    private long latestGeneration() throws IOException {
+        long result = 0;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(this.directory, SNAPSHOT_PREFIX + "*")) {
+            for (Path file : files) {
+                String suffix = file.getFileName().toString().substring(SNAPSHOT_PREFIX.length());
+                if (suffix.chars().allMatch(Character::isDigit)) {
+                    result = Math.max(result, Long.parseLong(suffix));
+                }
+            }
+        }
+        return result;
+    }
+
+    private Path snapshotFile(long g) {
+        return this.directory.resolve(SNAPSHOT_PREFIX + g);
+    }
+
+    private Path logFile(long g) {
+        return this.directory.resolve(LOG_PREFIX + g);
+    }
+
+    /**
+     * A rotation of the log: the records that still belong to the old log,
+     * the Smartshelf after them and the generation of the new log.
+     */
+    private static final class Rotation {
+
+        final byte[] tail;
+
+        final Smartshelf state;
+
+        final long generation;
+
+        /** Completed when the snapshot of state has been written or has failed. */
+        final CompletableFuture<Void> written = new CompletableFuture<>();
+
+        Rotation(byte[] tail, Smartshelf state, long generation) {
+            this.tail = tail;
+            this.state = state;
+            this.generation = generation;
+        }
+    }
+}
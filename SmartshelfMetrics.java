@@ -0,0 +1,318 @@
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * SmartshelfMetrics counts the calls of the main Smartshelf methods and
+ * records how long they take, for all Smartshelfs together. Recording is
+ * off by default and is switched on with enable(); while it is off, an
+ * instrumented method only reads one volatile field on top of its own work.
+ *
+ * The latencies are kept in histograms with one bucket per power of two
+ * nanoseconds, so percentiles are reported as the upper bound of the bucket
+ * they fall into, i.e., they are accurate up to a factor of two.
+ *
+ * In addition, Smartshelfs passed to watch are reported with their number
+ * of Items and the number of Items their storage has room for (gauges).
+ * They are only weakly referenced, so watching a Smartshelf does not keep
+ * it from being garbage collected.
+ *
+ * snapshot() exports all of this as CSV text. The expensive methods
+ * toString, makeNewSmartshelfWith and heaviestSmartshelf also emit a
+ * SmartshelfEvent to Java Flight Recorder, independently of enable().
+ *
+ * @author sobia
+ */
+public final class SmartshelfMetrics {
+
+    /**
+     * The instrumented methods.
+     */
+    public enum Operation {
+        ADD("add"),
+        ADD_ALL("addAll"),
+        EMPTY("empty"),
+        KEEP_ONLY_ITEMS_WITH("keepOnlyItemsWith"),
+        REMOVE_BY_NAME("removeByName"),
+        MAKE_NEW_SMARTSHELF_WITH("makeNewSmartshelfWith"),
+        TO_STRING("toString"),
+        HEAVIEST_SMARTSHELF("heaviestSmartshelf");
+
+        private final String methodName;
+
+        Operation(String methodName) {
+            this.methodName = methodName;
+        }
+
+        /**
+         * Returns the name of the Smartshelf method.
+         *
+         * @return the name of the Smartshelf method
+         */
+        public String methodName() {
+            return this.methodName;
+        }
+    }
+
+    /**
+     * The number of histogram buckets. Bucket 0 counts latencies of 0 ns,
+     * bucket b > 0 latencies of at least 2^(b-1) and less than 2^b ns.
+     */
+    private static final int BUCKETS = 64;
+
+    private static volatile boolean enabled;
+
+    private static final Stats[] STATS = new Stats[Operation.values().length];
+
+    static {
+        for (int i = 0; i < STATS.length; i++) {
+            STATS[i] = new Stats();
+        }
+    }
+
+    /** The watched Smartshelfs; guarded by itself. */
+    private static final List<WeakReference<Smartshelf>> WATCHED = new ArrayList<>();
+
+    private SmartshelfMetrics() {
+        // only class methods
+    }
+
+    /**
+     * Switches recording on.
+     */
+    public static void enable() {
+        enabled = true;
+    }
+
+    /**
+     * Switches recording off. The values recorded so far are kept.
+     */
+    public static void disable() {
+        enabled = false;
+    }
+
+    /**
+     * Returns whether recording is on.
+     *
+     * @return whether recording is on
+     */
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Forgets all recorded calls and latencies. The watched Smartshelfs
+     * stay watched.
+     */
+    public static void reset() {
+        for (Stats s : STATS) {
+            s.reset();
+        }
+    }
+
+    /**
+     * Includes shelf in the gauges of snapshot() for as long as it is
+     * reachable.
+     *
+     * @param shelf the Smartshelf to watch; must not be null
+     */
+    public static void watch(Smartshelf shelf) {
+        synchronized (WATCHED) {
+            WATCHED.add(new WeakReference<>(shelf));
+        }
+    }
+
+    /**
+     * Returns the number of recorded calls of op.
+     *
+     * @param op an instrumented method
+     * @return the number of recorded calls
+     */
+    public static long calls(Operation op) {
+        return STATS[op.ordinal()].calls.sum();
+    }
+
+    /**
+     * Returns the sum of the recorded latencies of op.
+     *
+     * @param op an instrumented method
+     * @return the total latency in nanoseconds
+     */
+    public static long totalNanos(Operation op) {
+        return STATS[op.ordinal()].totalNanos.sum();
+    }
+
+    /**
+     * Returns the greatest recorded latency of op.
+     *
+     * @param op an instrumented method
+     * @return the greatest latency in nanoseconds; 0 if no calls were
+     *  recorded
+     */
+    public static long maxNanos(Operation op) {
+        return STATS[op.ordinal()].maxNanos.get();
+    }
+
+    /**
+     * Returns an upper bound, accurate up to a factor of two, of the given
+     * percentile of the recorded latencies of op.
+     *
+     * @param op an instrumented method
+     * @param percentile between 0 and 100
+     * @return the percentile in nanoseconds; 0 if no calls were recorded
+     */
+    public static long percentileNanos(Operation op, double percentile) {
+        if (percentile < 0 || percentile > 100) {
+            throw new IllegalArgumentException("percentile must be between 0 and 100!");
+        }
+        Stats s = STATS[op.ordinal()];
+        long[] counts = new long[BUCKETS];
+        long calls = 0;
+        for (int b = 0; b < BUCKETS; b++) {
+            counts[b] = s.buckets[b].sum();
+            calls += counts[b];
+        }
+        if (calls == 0) {
+            return 0;
+        }
+        // the number of latencies that must be at most the result
+        long rank = Math.max(1, (long) Math.ceil(calls * percentile / 100));
+        long seen = 0;
+        for (int b = 0; b < BUCKETS; b++) {
+            seen += counts[b];
+            if (seen >= rank) {
+                if (b == 0) {
+                    return 0;
+                }
+                return b == BUCKETS - 1 ? s.maxNanos.get() : Math.min((1L << b) - 1, s.maxNanos.get());
+            }
+        }
+        return s.maxNanos.get();
+    }
+
+    /**
+     * Returns the number of watched Smartshelfs that are still reachable.
+     *
+     * @return the number of watched Smartshelfs
+     */
+    public static int watchedSmartshelfs() {
+        return (int) gauges()[0];
+    }
+
+    /**
+     * Returns the metrics recorded so far as CSV text: one line per
+     * instrumented method with its number of calls and its latencies in
+     * nanoseconds, followed by the gauges of the watched Smartshelfs. The
+     * capacity of StorageMode.LIST Smartshelfs is an estimate.
+     *
+     * @return the recorded metrics
+     */
+    public static String snapshot() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("operation,calls,totalNanos,p50Nanos,p99Nanos,p999Nanos,maxNanos\n");
+        for (Operation op : Operation.values()) {
+            sb.append(op.methodName()).append(',')
+                .append(calls(op)).append(',')
+                .append(totalNanos(op)).append(',')
+                .append(percentileNanos(op, 50)).append(',')
+                .append(percentileNanos(op, 99)).append(',')
+                .append(percentileNanos(op, 99.9)).append(',')
+                .append(maxNanos(op)).append('\n');
+        }
+        long[] gauges = gauges();
+        sb.append("gauge,value\n");
+        sb.append("watchedSmartshelfs,").append(gauges[0]).append('\n');
+        sb.append("items,").append(gauges[1]).append('\n');
+        sb.append("capacity,").append(gauges[2]).append('\n');
+        return sb.toString();
+    }
+
+    /**
+     * Reads the gauges of the watched Smartshelfs, forgetting the ones that
+     * have been garbage collected.
+     *
+     * @return the number of watched Smartshelfs, their number of Items and
+     *  their capacity
+     */
+    private static long[] gauges() {
+        long[] result = new long[3];
+        synchronized (WATCHED) {
+            Iterator<WeakReference<Smartshelf>> it = WATCHED.iterator();
+            while (it.hasNext()) {
+                Smartshelf shelf = it.next().get();
+                if (shelf == null) {
+                    it.remove();
+                    continue;
+                }
+                result[0]++;
+                result[1] += shelf.numberOfItems();
+                result[2] += shelf.capacity();
+            }
+        }
+        return result;
+    }
+
+    /* Recording; called by the instrumented methods */
+
+    /**
+     * Starts timing a call.
+     *
+     * @return the start time to be passed to stop; 0 if recording is off
+     */
+    static long start() {
+        return enabled ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Records a call of op that started at start, unless recording was off
+     * when it started.
+     *
+     * @param op the called method
+     * @param start the result of start()
+     */
+    static void stop(Operation op, long start) {
+        if (start != 0) {
+            STATS[op.ordinal()].record(Math.max(0, System.nanoTime() - start));
+        }
+    }
+
+    /**
+     * The recorded calls of one method. LongAdders keep concurrent calls
+     * from contending on the same counter.
+     */
+    private static final class Stats {
+
+        final LongAdder calls = new LongAdder();
+
+        final LongAdder totalNanos = new LongAdder();
+
+        final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+
+        final LongAdder[] buckets = new LongAdder[BUCKETS];
+
+        Stats() {
+            for (int b = 0; b < BUCKETS; b++) {
+                this.buckets[b] = new LongAdder();
+            }
+        }
+
+        void record(long nanos) {
+            this.calls.increment();
+            this.totalNanos.add(nanos);
+            this.maxNanos.accumulate(nanos);
+            this.buckets[64 - Long.numberOfLeadingZeros(nanos)].increment();
+        }
+
+        void reset() {
+            this.calls.reset();
+            this.totalNanos.reset();
+            this.maxNanos.reset();
+            for (LongAdder b : this.buckets) {
+                b.reset();
+            }
+        }
+    }
+}
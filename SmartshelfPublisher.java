@@ -0,0 +1,498 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A SmartshelfPublisher publishes the modifications of a Smartshelf to
+ * java.util.concurrent.Flow subscribers, so that they need not poll the
+ * Smartshelf. Every modification (add, addAll, empty, keepOnlyItemsWith
+ * and removeByName) becomes a Change, which also carries the number of
+ * Items and the total weight of the Smartshelf right after it.
+ *
+ * Changes are published in batches: additions are collected until a batch
+ * is full, until another kind of modification happens, until flush() is
+ * called or, with a positive flush interval, until a background thread
+ * flushes them. So addAll with many Items causes few batches, not one per
+ * Item.
+ *
+ * In addition, alertWhen returns a publisher of Alerts that are sent
+ * whenever the total weight or the number of Items crosses a threshold.
+ * Thresholds are checked on every modification in constant time, so even
+ * short spikes are noticed.
+ *
+ * Publishing never blocks the thread that modifies the Smartshelf: every
+ * subscriber has a bounded buffer, and a batch or Alert that does not fit
+ * into the buffer of a slow subscriber is dropped for that subscriber
+ * (see droppedMessages()). Since every Change carries the state of the
+ * Smartshelf, the next batch such a subscriber receives is up to date
+ * again.
+ *
+ * @author sobia
+ */
+public class SmartshelfPublisher
+        implements SmartshelfListener, Flow.Publisher<List<SmartshelfPublisher.Change>>, AutoCloseable {
+
+    /**
+     * A modification of a Smartshelf.
+     */
+    public static final class Change {
+
+        /**
+         * The kinds of modifications.
+         */
+        public enum Kind {
+            /** An Item was added by add or addAll. */
+            ADDED,
+            /** The Smartshelf was emptied. */
+            EMPTIED,
+            /** keepOnlyItemsWith was called. */
+            KEPT_ONLY_ITEMS_WITH,
+            /** removeByName removed at least one Item. */
+            REMOVED_BY_NAME
+        }
+
+        private final Kind kind;
+
+        private final Item item;
+
+        private final int maxItemWeightInGrammes;
+
+        private final String name;
+
+        private final int numberOfItems;
+
+        private final long totalWeightInGrammes;
+
+        Change(Kind kind, Item item, int maxItemWeightInGrammes, String name,
+                int numberOfItems, long totalWeightInGrammes) {
+            this.kind = kind;
+            this.item = item;
+            this.maxItemWeightInGrammes = maxItemWeightInGrammes;
+            this.name = name;
+            this.numberOfItems = numberOfItems;
+            this.totalWeightInGrammes = totalWeightInGrammes;
+        }
+
+        /**
+         * Returns the kind of this Change.
+         *
+         * @return the kind of this Change
+         */
+        public Kind getKind() {
+            return this.kind;
+        }
+
+        /**
+         * Returns the added Item.
+         *
+         * @return the added Item for ADDED; null otherwise
+         */
+        public Item getItem() {
+            return this.item;
+        }
+
+        /**
+         * Returns the argument of keepOnlyItemsWith.
+         *
+         * @return the maximum weight for KEPT_ONLY_ITEMS_WITH; 0 otherwise
+         */
+        public int getMaxItemWeightInGrammes() {
+            return this.maxItemWeightInGrammes;
+        }
+
+        /**
+         * Returns the argument of removeByName.
+         *
+         * @return the name for REMOVED_BY_NAME; null otherwise
+         */
+        public String getName() {
+            return this.name;
+        }
+
+        /**
+         * Returns the number of Items of the Smartshelf after this Change.
+         *
+         * @return the number of Items after this Change
+         */
+        public int getNumberOfItems() {
+            return this.numberOfItems;
+        }
+
+        /**
+         * Returns the total weight of the Smartshelf after this Change.
+         *
+         * @return the total weight in grammes after this Change
+         */
+        public long getTotalWeightInGrammes() {
+            return this.totalWeightInGrammes;
+        }
+
+        /**
+         * Returns a string representation of this Change, e.g.,
+         * "ADDED (Pen, 15g) -> 1 Items, 15g".
+         *
+         * @return a string representation of this Change
+         */
+        @Override
+        public String toString() {
+            String argument;
+            switch (this.kind) {
+                case ADDED:
+                    argument = " " + this.item;
+                    break;
+                case KEPT_ONLY_ITEMS_WITH:
+                    argument = " " + this.maxItemWeightInGrammes;
+                    break;
+                case REMOVED_BY_NAME:
+                    argument = " " + this.name;
+                    break;
+                default:
+                    argument = "";
+                    break;
+            }
+            return this.kind + argument + " -> " + this.numberOfItems + " Items, "
+                    + this.totalWeightInGrammes + "g";
+        }
+    }
+
+    /**
+     * A notification that a measure of a Smartshelf has crossed a threshold.
+     */
+    public static final class Alert {
+
+        /**
+         * The measures that thresholds can be set for.
+         */
+        public enum Measure {
+            /** The total weight in grammes. */
+            TOTAL_WEIGHT_IN_GRAMMES,
+            /** The number of Items. */
+            NUMBER_OF_ITEMS
+        }
+
+        private final Measure measure;
+
+        private final long threshold;
+
+        private final long value;
+
+        Alert(Measure measure, long threshold, long value) {
+            this.measure = measure;
+            this.threshold = threshold;
+            this.value = value;
+        }
+
+        /**
+         * Returns the measure that crossed the threshold.
+         *
+         * @return the measure
+         */
+        public Measure getMeasure() {
+            return this.measure;
+        }
+
+        /**
+         * Returns the threshold that was crossed.
+         *
+         * @return the threshold
+         */
+        public long getThreshold() {
+            return this.threshold;
+        }
+
+        /**
+         * Returns the value of the measure right after it crossed the
+         * threshold.
+         *
+         * @return the new value of the measure
+         */
+        public long getValue() {
+            return this.value;
+        }
+
+        /**
+         * Returns whether the measure rose to the threshold or above, as
+         * opposed to falling below it.
+         *
+         * @return true if the value is at least the threshold
+         */
+        public boolean isAtLeastThreshold() {
+            return this.value >= this.threshold;
+        }
+
+        @Override
+        public String toString() {
+            return this.measure + (isAtLeastThreshold() ? " >= " : " < ") + this.threshold
+                    + ": " + this.value;
+        }
+    }
+
+    /**
+     * Delivers the messages to the subscribers: the common pool, unless it
+     * does not have more than one thread, in which case a thread is
+     * started per delivery task, like for SubmissionPublisher by default.
+     */
+    private static final Executor EXECUTOR = ForkJoinPool.getCommonPoolParallelism() > 1
+        ? ForkJoinPool.commonPool()
+        : task -> {
+            Thread t = new Thread(task, "SmartshelfPublisher delivery");
+            t.setDaemon(true);
+            t.start();
+        };
+
+    /** The publisher of an alert together with its condition. */
+    private static final class AlertPublisher extends SubmissionPublisher<Alert> {
+
+        final Alert.Measure measure;
+
+        final long threshold;
+
+        AlertPublisher(Alert.Measure measure, long threshold, int bufferCapacity) {
+            super(EXECUTOR, bufferCapacity);
+            this.measure = measure;
+            this.threshold = threshold;
+        }
+    }
+
+    private final Smartshelf shelf;
+
+    private final int maxBatchSize;
+
+    private final int bufferCapacity;
+
+    private final SubmissionPublisher<List<Change>> changes;
+
+    private final List<AlertPublisher> alerts = new CopyOnWriteArrayList<>();
+
+    /** The Changes not published yet; guarded by this. */
+    private List<Change> pending = new ArrayList<>();
+
+    /**
+     * Whether close() has been called; guarded by this, like every offer,
+     * so that batches are offered in the order in which they were taken
+     * from pending and never after the publishers have been closed.
+     */
+    private boolean closed;
+
+    /*
+     * The number of Items and the total weight of shelf after the last
+     * modification; only used by the thread that modifies shelf.
+     */
+    private int numberOfItems;
+
+    private long totalWeightInGrammes;
+
+    private final LongAdder dropped = new LongAdder();
+
+    /** Flushes pending periodically; null if the flush interval is 0. */
+    private final ScheduledExecutorService flusher;
+
+    /**
+     * Constructs a new SmartshelfPublisher for shelf and adds it as a
+     * listener to shelf. Must be called by the thread that modifies shelf.
+     *
+     * @param shelf the Smartshelf whose modifications are published; must
+     *  not be null
+     * @param maxBatchSize the maximum number of Changes per batch; must be
+     *  positive
+     * @param flushIntervalMillis how often pending Changes are published
+     *  even if their batch is not full; 0 to only publish them when their
+     *  batch is full, when the Smartshelf is modified otherwise than by
+     *  adding, or when flush() is called
+     * @param bufferCapacity the maximum number of batches or Alerts that
+     *  are buffered per subscriber before further ones are dropped for it;
+     *  must be positive
+     * @throws IllegalArgumentException if maxBatchSize, flushIntervalMillis
+     *  or bufferCapacity are out of range
+     */
+    public SmartshelfPublisher(Smartshelf shelf, int maxBatchSize, long flushIntervalMillis,
+            int bufferCapacity) {
+        if (maxBatchSize <= 0) {
+            throw new IllegalArgumentException("Expected maxBatchSize > 0, found " + maxBatchSize);
+        }
+        if (bufferCapacity <= 0) {
+            throw new IllegalArgumentException("Expected bufferCapacity > 0, found " + bufferCapacity);
+        }
+        if (flushIntervalMillis < 0) {
+            throw new IllegalArgumentException("Expected flushIntervalMillis >= 0, found "
+                    + flushIntervalMillis);
+        }
+        this.shelf = Objects.requireNonNull(shelf, "shelf must not be null!");
+        this.maxBatchSize = maxBatchSize;
+        this.bufferCapacity = bufferCapacity;
+        this.changes = new SubmissionPublisher<>(EXECUTOR, bufferCapacity);
+        this.numberOfItems = shelf.numberOfItems();
+        this.totalWeightInGrammes = shelf.totalWeightInGrammesAsLong();
+        if (flushIntervalMillis > 0) {
+            this.flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "SmartshelfPublisher flush");
+                t.setDaemon(true);
+                return t;
+            });
+            this.flusher.scheduleAtFixedRate(this::flush, flushIntervalMillis,
+                flushIntervalMillis, TimeUnit.MILLISECONDS);
+        } else {
+            this.flusher = null;
+        }
+        shelf.addListener(this);
+    }
+
+    /* Subscribing */
+
+    /**
+     * Adds a subscriber for the batches of Changes.
+     *
+     * @param subscriber the subscriber; must not be null
+     */
+    @Override
+    public void subscribe(Flow.Subscriber<? super List<Change>> subscriber) {
+        this.changes.subscribe(subscriber);
+    }
+
+    /**
+     * Returns a publisher that sends an Alert whenever measure crosses
+     * threshold, i.e., whenever it becomes at least threshold after being
+     * less, or less after being at least threshold.
+     *
+     * @param measure the measure to watch; must not be null
+     * @param threshold the threshold
+     * @return a new publisher of Alerts
+     */
+    public Flow.Publisher<Alert> alertWhen(Alert.Measure measure, long threshold) {
+        AlertPublisher result = new AlertPublisher(
+            Objects.requireNonNull(measure, "measure must not be null!"), threshold,
+            this.bufferCapacity);
+        synchronized (this) {
+            if (this.closed) {
+                result.close();
+            } else {
+                this.alerts.add(result);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the number of batches and Alerts that were dropped for
+     * subscribers whose buffers were full.
+     *
+     * @return the number of dropped messages
+     */
+    public long droppedMessages() {
+        return this.dropped.sum();
+    }
+
+    /**
+     * Publishes the pending Changes, if any, as a batch.
+     */
+    public synchronized void flush() {
+        if (!this.closed) {
+            publishPending();
+        }
+    }
+
+    /**
+     * Publishes the pending Changes, stops following the Smartshelf and
+     * completes all subscriptions.
+     */
+    @Override
+    public void close() {
+        this.shelf.removeListener(this);
+        if (this.flusher != null) {
+            this.flusher.shutdown();
+        }
+        synchronized (this) {
+            if (this.closed) {
+                return;
+            }
+            publishPending();
+            this.closed = true;
+        }
+        this.changes.close();
+        for (AlertPublisher a : this.alerts) {
+            a.close();
+        }
+    }
+
+    /* Notifications from the Smartshelf */
+
+    @Override
+    public void itemAdded(Smartshelf shelf, Item item) {
+        changed(Change.Kind.ADDED, item, 0, null);
+    }
+
+    @Override
+    public void emptied(Smartshelf shelf) {
+        changed(Change.Kind.EMPTIED, null, 0, null);
+    }
+
+    @Override
+    public void keptOnlyItemsWith(Smartshelf shelf, int maxItemWeightInGrammes) {
+        changed(Change.Kind.KEPT_ONLY_ITEMS_WITH, null, maxItemWeightInGrammes, null);
+    }
+
+    @Override
+    public void removedByName(Smartshelf shelf, String name) {
+        changed(Change.Kind.REMOVED_BY_NAME, null, 0, name);
+    }
+
+    /**
+     * Records a Change, checks the thresholds and publishes the pending
+     * Changes if the batch is full or the Change is not an addition.
+     */
+    private void changed(Change.Kind kind, Item item, int maxItemWeightInGrammes, String name) {
+        int oldNumberOfItems = this.numberOfItems;
+        long oldTotalWeight = this.totalWeightInGrammes;
+        this.numberOfItems = this.shelf.numberOfItems();
+        this.totalWeightInGrammes = this.shelf.totalWeightInGrammesAsLong();
+        Change change = new Change(kind, item, maxItemWeightInGrammes, name,
+            this.numberOfItems, this.totalWeightInGrammes);
+        synchronized (this) {
+            if (this.closed) {
+                return;
+            }
+            this.pending.add(change);
+            if (this.pending.size() >= this.maxBatchSize || kind != Change.Kind.ADDED) {
+                publishPending();
+            }
+            for (AlertPublisher a : this.alerts) {
+                long oldValue = a.measure == Alert.Measure.TOTAL_WEIGHT_IN_GRAMMES
+                    ? oldTotalWeight : oldNumberOfItems;
+                long newValue = a.measure == Alert.Measure.TOTAL_WEIGHT_IN_GRAMMES
+                    ? this.totalWeightInGrammes : this.numberOfItems;
+                if ((oldValue >= a.threshold) != (newValue >= a.threshold)) {
+                    a.offer(new Alert(a.measure, a.threshold, newValue), (subscriber, alert) -> {
+                        this.dropped.increment();
+                        return false;
+                    });
+                }
+            }
+        }
+    }
+
+    /**
+     * Offers the pending Changes, if any, as a batch. Must be called with
+     * this held and before close(); offer does not block, since a batch
+     * that does not fit is dropped.
+     */
+    private void publishPending() {
+        if (this.pending.isEmpty()) {
+            return;
+        }
+        List<Change> batch = this.pending;
+        this.pending = new ArrayList<>();
+        this.changes.offer(batch, (subscriber, b) -> {
+            this.dropped.increment();
+            return false;
+        });
+    }
+}
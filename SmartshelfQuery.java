@@ -0,0 +1,218 @@
+import java.util.Objects;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+import java.util.function.Predicate;
+
+/**
+ * A SmartshelfQuery selects Items of a Smartshelf by weight range and by
+ * conditions on their names or on the Items themselves, and then computes
+ * an aggregate over the selected Items or collects them in a new
+ * Smartshelf. For example,
+ *
+ *   shelf.query().weightBetween(100, 400).nameStartsWith("L").total()
+ *
+ * returns the total weight of the Items of 100 to 400 grammes whose names
+ * start with "L". All conditions are checked together in a single pass over
+ * the Items when the aggregate is computed; no intermediate Smartshelfs are
+ * made, unlike for chained calls of makeNewSmartshelfWith.
+ *
+ * The conditions are combined with "and". A SmartshelfQuery can be computed
+ * several times, and it reflects the Items of its Smartshelf at the time of
+ * computation.
+ *
+ * @author sobia
+ */
+public class SmartshelfQuery {
+
+    private final Smartshelf shelf;
+
+    private int minWeightInGrammes = Integer.MIN_VALUE;
+
+    private int maxWeightInGrammes = Integer.MAX_VALUE;
+
+    /** The conditions on the Items other than the weight range; null if none. */
+    private Predicate<? super Item> condition;
+
+    /**
+     * Constructs a new SmartshelfQuery that selects all Items of shelf.
+     * Use Smartshelf.query() instead.
+     *
+     * @param shelf the Smartshelf to query; must not be null
+     */
+    SmartshelfQuery(Smartshelf shelf) {
+        this.shelf = shelf;
+    }
+
+    /* Conditions */
+
+    /**
+     * Selects only Items whose weight is at least minWeightInGrammes.
+     *
+     * @param minWeightInGrammes the minimum weight in grammes
+     * @return this SmartshelfQuery
+     */
+    public SmartshelfQuery weightAtLeast(int minWeightInGrammes) {
+        this.minWeightInGrammes = Math.max(this.minWeightInGrammes, minWeightInGrammes);
+        return this;
+    }
+
+    /**
+     * Selects only Items whose weight is at most maxWeightInGrammes.
+     *
+     * @param maxWeightInGrammes the maximum weight in grammes
+     * @return this SmartshelfQuery
+     */
+    public SmartshelfQuery weightAtMost(int maxWeightInGrammes) {
+        this.maxWeightInGrammes = Math.min(this.maxWeightInGrammes, maxWeightInGrammes);
+        return this;
+    }
+
+    /**
+     * Selects only Items whose weight is between minWeightInGrammes and
+     * maxWeightInGrammes (both inclusive).
+     *
+     * @param minWeightInGrammes the minimum weight in grammes
+     * @param maxWeightInGrammes the maximum weight in grammes
+     * @return this SmartshelfQuery
+     */
+    public SmartshelfQuery weightBetween(int minWeightInGrammes, int maxWeightInGrammes) {
+        return weightAtLeast(minWeightInGrammes).weightAtMost(maxWeightInGrammes);
+    }
+
+    /**
+     * Selects only Items whose names start with prefix.
+     *
+     * @param prefix must not be null
+     * @return this SmartshelfQuery
+     */
+    public SmartshelfQuery nameStartsWith(String prefix) {
+        Objects.requireNonNull(prefix, "prefix must not be null!");
+        return where(it -> it.getName().startsWith(prefix));
+    }
+
+    /**
+     * Selects only Items whose names satisfy condition.
+     *
+     * @param condition must not be null
+     * @return this SmartshelfQuery
+     */
+    public SmartshelfQuery nameMatching(Predicate<? super String> condition) {
+        Objects.requireNonNull(condition, "condition must not be null!");
+        return where(it -> condition.test(it.getName()));
+    }
+
+    /**
+     * Selects only Items that satisfy condition.
+     *
+     * @param condition must not be null
+     * @return this SmartshelfQuery
+     */
+    public SmartshelfQuery where(Predicate<? super Item> condition) {
+        Objects.requireNonNull(condition, "condition must not be null!");
+        Predicate<? super Item> previous = this.condition;
+        this.condition = previous == null ? condition
+            : it -> previous.test(it) && condition.test(it);
+        return this;
+    }
+
+    /* Aggregates */
+
+    /**
+     * Returns the number of selected Items.
+     *
+     * @return the number of selected Items
+     */
+    public int count() {
+        int[] count = { 0 };
+        forEachSelectedWeight(w -> count[0]++);
+        return count[0];
+    }
+
+    /**
+     * Returns the total weight of the selected Items.
+     *
+     * @return the total weight of the selected Items in grammes
+     */
+    public long total() {
+        long[] total = { 0 };
+        forEachSelectedWeight(w -> total[0] += w);
+        return total[0];
+    }
+
+    /**
+     * Returns the average weight of the selected Items; -1.0 if no Item is
+     * selected, as for Smartshelf.averageWeightInGrammes().
+     *
+     * @return the average weight of the selected Items, or -1.0
+     */
+    public double average() {
+        long[] countAndTotal = { 0, 0 };
+        forEachSelectedWeight(w -> {
+            countAndTotal[0]++;
+            countAndTotal[1] += w;
+        });
+        return countAndTotal[0] == 0 ? -1.0 : countAndTotal[1] / (double) countAndTotal[0];
+    }
+
+    /**
+     * Returns the greatest selected Item according to the natural ordering
+     * of Item; null if no Item is selected.
+     *
+     * @return the greatest selected Item, or null
+     */
+    public Item max() {
+        Item[] max = { null };
+        forEachSelected(it -> {
+            if (max[0] == null || it.compareTo(max[0]) > 0) {
+                max[0] = it;
+            }
+        });
+        return max[0];
+    }
+
+    /**
+     * Returns a new Smartshelf with the selected Items that stores them in
+     * the same way as the queried Smartshelf. Does not modify the queried
+     * Smartshelf.
+     *
+     * @return a new Smartshelf with the selected Items
+     */
+    public Smartshelf toSmartshelf() {
+        Smartshelf result = this.shelf.emptyCopy();
+        forEachSelected(result::add);
+        return result;
+    }
+
+    /**
+     * Performs action for every selected Item, checking all conditions for
+     * an Item at once. Only the Items in the weight range are visited where
+     * the storage mode keeps them ordered by weight.
+     *
+     * @param action the action to perform
+     */
+    private void forEachSelected(Consumer<Item> action) {
+        Predicate<? super Item> cond = this.condition;
+        this.shelf.forEachItemBetween(this.minWeightInGrammes, this.maxWeightInGrammes,
+            cond == null ? action : it -> {
+                if (cond.test(it)) {
+                    action.accept(it);
+                }
+            });
+    }
+
+    /**
+     * Passes the weight of every selected Item to action. Without
+     * conditions other than the weight range, no Items are made where the
+     * storage mode keeps the weights in a column of their own.
+     *
+     * @param action receives the weight of every selected Item
+     */
+    private void forEachSelectedWeight(IntConsumer action) {
+        if (this.condition != null) {
+            forEachSelected(it -> action.accept(it.getWeightInGrammes()));
+        } else {
+            this.shelf.forEachWeightBetween(this.minWeightInGrammes, this.maxWeightInGrammes,
+                action);
+        }
+    }
+}
@@ -0,0 +1,207 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Saves Smartshelfs to and loads them from a compact binary snapshot file.
+ * Loading maps the file into memory, so it takes about the same time for
+ * every size of Smartshelf: the Items are read from the mapped file only
+ * when they are looked at.
+ *
+ * A snapshot file consists of (all ints and longs big-endian):
+ *
+ *   header:       magic ("SHLF"), version, number of Items n,
+ *                 number of distinct names m (ints), total weight (long)
+ *   weights:      n ints, the weight of each Item
+ *   name ids:     n ints, the name of each Item as an index into the names
+ *   name offsets: m + 1 ints, where each name starts in the name bytes;
+ *                 the last one is the length of the name bytes
+ *   name bytes:   the names in UTF-8, one after the other
+ *
+ * @author sobia
+ */
+public final class SmartshelfSnapshot {
+
+    /** "SHLF" in ASCII. */
+    static final int MAGIC = 0x53484C46;
+
+    static final int VERSION = 1;
+
+    /** The size of the header in bytes. */
+    static final int HEADER_SIZE = 4 * 4 + 8;
+
+    /** The size of the buffer used for writing. */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private SmartshelfSnapshot() {
+        // only class methods
+    }
+
+    /**
+     * Writes a snapshot of shelf to file, replacing the file if it exists.
+     * The Items are read twice (once for the weights, once for the names),
+     * but never copied; memory use only depends on the number of distinct
+     * names.
+     *
+     * @param shelf the Smartshelf to be saved; must not be null
+     * @param file the file to write to; must not be null
+     * @throws IOException if the file cannot be written
+     */
+    public static void write(Smartshelf shelf, Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+            buffer.position(HEADER_SIZE); // the header is written last
+
+            IntWriter out = new IntWriter(channel, buffer);
+            shelf.forEachItem(it -> out.write(it.getWeightInGrammes()));
+
+            Map<String, Integer> ids = new HashMap<>();
+            shelf.forEachItem(it -> out.write(ids.computeIfAbsent(it.getName(), n -> ids.size())));
+
+            byte[][] names = new byte[ids.size()][];
+            for (Map.Entry<String, Integer> e : ids.entrySet()) {
+                names[e.getValue()] = e.getKey().getBytes(StandardCharsets.UTF_8);
+            }
+            int offset = 0;
+            out.write(offset);
+            for (byte[] name : names) {
+                offset += name.length;
+                out.write(offset);
+            }
+            for (byte[] name : names) {
+                out.write(name);
+            }
+            out.flush();
+
+            buffer.clear();
+            buffer.putInt(MAGIC).putInt(VERSION).putInt(shelf.numberOfItems())
+                .putInt(names.length).putLong(shelf.totalWeightInGrammesAsLong());
+            buffer.flip();
+            channel.write(buffer, 0);
+            if (out.exception != null) {
+                throw out.exception;
+            }
+        }
+    }
+
+    /**
+     * Loads a Smartshelf from a snapshot written by write. The file is
+     * mapped into memory, and Items are read from it only when they are
+     * needed; the total weight and the number of Items are read from the
+     * header, so they are available right away. Only the sizes in the
+     * header are checked against the size of the file, not the Items. The
+     * new Smartshelf copies its Items into a COLUMNAR store when it is
+     * first modified; modifications never change the file.
+     *
+     * @param file the file to load; must not be null
+     * @return a new Smartshelf with the Items of the snapshot
+     * @throws IOException if the file cannot be read or is not a snapshot
+     */
+    public static Smartshelf load(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("Snapshot too large to map: " + size + " bytes");
+            }
+            if (size < HEADER_SIZE) {
+                throw new IOException("Not a Smartshelf snapshot: " + file);
+            }
+            // the mapping stays valid after the channel is closed
+            MappedByteBuffer data = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            if (data.getInt(0) != MAGIC) {
+                throw new IOException("Not a Smartshelf snapshot: " + file);
+            }
+            if (data.getInt(4) != VERSION) {
+                throw new IOException("Unsupported snapshot version " + data.getInt(4));
+            }
+            checkSize(data, file);
+            return new Smartshelf(new MappedItemStore(data), true);
+        }
+    }
+
+    /**
+     * Checks that the numbers of Items and names in the header of a
+     * snapshot match the size of the file, so that a truncated or corrupt
+     * file is rejected by load instead of failing when its Items are read.
+     * Only the header and the last name offset are read.
+     *
+     * @param data the contents of the snapshot file, with a valid magic
+     *  number and version
+     * @param file the file, for the message
+     * @throws IOException if the sizes do not match
+     */
+    private static void checkSize(ByteBuffer data, Path file) throws IOException {
+        long n = data.getInt(8);
+        long m = data.getInt(12);
+        long nameOffsetsEnd = HEADER_SIZE + 8 * n + 4 * (m + 1);
+        if (n < 0 || m < 0 || nameOffsetsEnd > data.capacity()) {
+            throw new IOException("Truncated or corrupt Smartshelf snapshot: " + file
+                    + " (" + n + " Items, " + m + " names in " + data.capacity() + " bytes)");
+        }
+        long nameBytes = data.getInt((int) nameOffsetsEnd - 4);
+        if (nameBytes < 0 || nameOffsetsEnd + nameBytes != data.capacity()) {
+            throw new IOException("Truncated or corrupt Smartshelf snapshot: " + file
+                    + " (expected " + (nameOffsetsEnd + nameBytes) + " bytes, found "
+                    + data.capacity() + ")");
+        }
+    }
+
+    /**
+     * Writes ints and bytes to a FileChannel through a buffer. Since it is
+     * used from lambdas, it keeps the first IOException instead of throwing
+     * it.
+     */
+    private static class IntWriter {
+
+        private final FileChannel channel;
+
+        private final ByteBuffer buffer;
+
+        private IOException exception;
+
+        IntWriter(FileChannel channel, ByteBuffer buffer) {
+            this.channel = channel;
+            this.buffer = buffer;
+        }
+
+        void write(int value) {
+            if (this.buffer.remaining() < 4) {
+                flush();
+            }
+            this.buffer.putInt(value);
+        }
+
+        void write(byte[] bytes) {
+            int start = 0;
+            while (start < bytes.length) {
+                if (!this.buffer.hasRemaining()) {
+                    flush();
+                }
+                int n = Math.min(this.buffer.remaining(), bytes.length - start);
+                this.buffer.put(bytes, start, n);
+                start += n;
+            }
+        }
+
+        void flush() {
+            this.buffer.flip();
+            try {
+                while (this.buffer.hasRemaining()) {
+                    this.channel.write(this.buffer);
+                }
+            } catch (IOException e) {
+                if (this.exception == null) {
+                    this.exception = e;
+                }
+            }
+            this.buffer.clear();
+        }
+    }
+}
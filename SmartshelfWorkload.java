@@ -0,0 +1,124 @@
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Generated workloads for measuring Smartshelf: Items with a given weight
+ * distribution and duplicate rate, and Smartshelfs filled with them. The
+ * JMH benchmarks in jmh/ (see build.gradle) and SmartshelfLoadDriver use
+ * the same workloads, so their results can be compared with each other.
+ *
+ * @author sobia
+ */
+public final class SmartshelfWorkload {
+
+    private SmartshelfWorkload() {
+        // only class methods
+    }
+
+    /**
+     * Weight distributions of the generated Items.
+     */
+    public enum Distribution {
+        /** Weights uniformly distributed between 1 and 10000 grammes. */
+        UNIFORM {
+            @Override
+            int nextWeight(Random random) {
+                return 1 + random.nextInt(10_000);
+            }
+        },
+        /** Weights between 100 and 140 grammes, as for a single product line. */
+        NARROW {
+            @Override
+            int nextWeight(Random random) {
+                return 100 + random.nextInt(41);
+            }
+        },
+        /** Mostly light Items with a few very heavy ones. */
+        SKEWED {
+            @Override
+            int nextWeight(Random random) {
+                return 1 + (int) Math.min(Integer.MAX_VALUE - 1, Math.abs(Math.exp(random.nextGaussian() * 2) * 50));
+            }
+        };
+
+        /**
+         * Draws the next weight from this Distribution.
+         *
+         * @param random the source of randomness
+         * @return a positive weight in grammes
+         */
+        abstract int nextWeight(Random random);
+    }
+
+    /**
+     * Generates Items.
+     *
+     * @param size the number of Items
+     * @param distribution the distribution of the weights
+     * @param duplicates the probability that an Item repeats an earlier one
+     * @param seed the seed for the random numbers, so that runs are
+     *  repeatable
+     * @return size Items
+     */
+    public static Item[] makeItems(int size, Distribution distribution, double duplicates, long seed) {
+        Random random = new Random(seed);
+        Item[] result = new Item[size];
+        for (int i = 0; i < size; i++) {
+            if (i > 0 && random.nextDouble() < duplicates) {
+                result[i] = result[random.nextInt(i)];
+            } else {
+                result[i] = Item.of("Item" + random.nextInt(Math.max(1, size / 4)),
+                    distribution.nextWeight(random));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Makes a Smartshelf with the given Items.
+     *
+     * @param items the Items to be added
+     * @param mode the storage mode of the Smartshelf
+     * @return a new Smartshelf with the Items
+     */
+    public static Smartshelf makeShelf(Item[] items, StorageMode mode) {
+        Smartshelf result = new Smartshelf(mode, items.length);
+        result.addAll(items);
+        return result;
+    }
+
+    /**
+     * Spreads the Items over up to 10000 Smartshelfs, as in a warehouse.
+     *
+     * @param items the Items to be spread
+     * @param mode the storage mode of the Smartshelfs
+     * @return the Smartshelfs
+     */
+    public static Smartshelf[] makeShelves(Item[] items, StorageMode mode) {
+        Smartshelf[] result = new Smartshelf[Math.min(items.length, 10_000)];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = new Smartshelf(mode);
+        }
+        for (int i = 0; i < items.length; i++) {
+            result[i % result.length].add(items[i]);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the median of the weights of items (the upper one for an even
+     * number of Items), used as the threshold for the filtering operations
+     * so that about half the Items pass.
+     *
+     * @param items must not be empty
+     * @return the median weight of items
+     */
+    public static int medianWeight(Item[] items) {
+        int[] weights = new int[items.length];
+        for (int i = 0; i < items.length; i++) {
+            weights[i] = items[i].getWeightInGrammes();
+        }
+        Arrays.sort(weights);
+        return weights[weights.length / 2];
+    }
+}
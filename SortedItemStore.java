@@ -0,0 +1,240 @@
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+import java.util.function.ObjIntConsumer;
+
+/**
+ * An ItemStore that keeps its Items sorted wrt the natural ordering of Item
+ * (weight first, then name). Since Items that compare as equal are also
+ * equal, every distinct Item is stored once together with the number of
+ * times it has been added.
+ *
+ * Selecting the Items up to a maximum weight costs O(log n + k) for k
+ * selected Items, removing the heavier Items cuts off the tail of the
+ * index in bulk, reporting every distinct Item (or, for
+ * removeWeightsHeavierThan, every distinct weight) once with its count,
+ * and the greatest Item is the last key of the index.
+ *
+ * @author sobia
+ */
+class SortedItemStore implements ItemStore {
+
+    /** Maps every stored Item to the number of times it is stored. */
+    private final NavigableMap<Item, Integer> index;
+
+    private int size;
+
+    /**
+     * Constructs a new SortedItemStore without any Items.
+     */
+    SortedItemStore() {
+        this.index = new TreeMap<>();
+    }
+
+    /**
+     * Constructs a new SortedItemStore with the given index.
+     *
+     * @param index must not be used elsewhere afterwards
+     * @param size the sum of the counts in index
+     */
+    private SortedItemStore(NavigableMap<Item, Integer> index, int size) {
+        this.index = index;
+        this.size = size;
+    }
+
+    @Override
+    public int size() {
+        return this.size;
+    }
+
+    @Override
+    public void add(Item item) {
+        this.index.merge(item, 1, Integer::sum);
+        this.size++;
+    }
+
+    @Override
+    public void ensureCapacity(int minCapacity) {
+        // nothing to allocate in advance
+    }
+
+    @Override
+    public void clear() {
+        this.index.clear();
+        this.size = 0;
+    }
+
+    @Override
+    public void removeHeavierThan(int maxItemWeightInGrammes, ObjIntConsumer<? super Item> removed) {
+        Map<Item, Integer> tail = heavierThan(maxItemWeightInGrammes);
+        for (Map.Entry<Item, Integer> e : tail.entrySet()) {
+            removed.accept(e.getKey(), e.getValue());
+            this.size -= e.getValue();
+        }
+        tail.clear();
+    }
+
+    /**
+     * Cuts off the tail of the index and reports its weights in one pass
+     * over it, once for every distinct weight, since Items of the same
+     * weight are next to each other in the index.
+     */
+    @Override
+    public void removeWeightsHeavierThan(int maxItemWeightInGrammes, RemovedWeights removed) {
+        Map<Item, Integer> tail = heavierThan(maxItemWeightInGrammes);
+        int weight = 0;
+        int count = 0;
+        for (Map.Entry<Item, Integer> e : tail.entrySet()) {
+            int w = e.getKey().getWeightInGrammes();
+            if (w != weight && count > 0) {
+                removed.accept(weight, count);
+                count = 0;
+            }
+            weight = w;
+            count += e.getValue();
+            this.size -= e.getValue();
+        }
+        if (count > 0) {
+            removed.accept(weight, count);
+        }
+        tail.clear();
+    }
+
+    @Override
+    public void removeNamed(String name, ObjIntConsumer<? super Item> removed) {
+        Iterator<Map.Entry<Item, Integer>> entries = this.index.entrySet().iterator();
+        while (entries.hasNext()) {
+            Map.Entry<Item, Integer> e = entries.next();
+            if (e.getKey().getName().equals(name)) {
+                removed.accept(e.getKey(), e.getValue());
+                this.size -= e.getValue();
+                entries.remove();
+            }
+        }
+    }
+
+    @Override
+    public ItemStore copyWith(int maxItemWeightInGrammes) {
+        NavigableMap<Item, Integer> head = atMost(maxItemWeightInGrammes);
+        int count = 0;
+        for (int c : head.values()) {
+            count += c;
+        }
+        // building a TreeMap from a SortedMap takes linear time
+        return new SortedItemStore(new TreeMap<>(head), count);
+    }
+
+    @Override
+    public ItemStore emptyCopy(int capacity) {
+        return new SortedItemStore();
+    }
+
+    @Override
+    public long totalWeight() {
+        long sum = 0;
+        for (Map.Entry<Item, Integer> e : this.index.entrySet()) {
+            sum += (long) e.getKey().getWeightInGrammes() * e.getValue();
+        }
+        return sum;
+    }
+
+    @Override
+    public Item greatest() {
+        return this.index.isEmpty() ? null : this.index.lastKey();
+    }
+
+    @Override
+    public Iterator<Item> iterator() {
+        return new CountingIterator(this.index);
+    }
+
+    @Override
+    public void forEachBetween(int minWeightInGrammes, int maxWeightInGrammes,
+            Consumer<? super Item> action) {
+        for (Map.Entry<Item, Integer> e : between(minWeightInGrammes, maxWeightInGrammes).entrySet()) {
+            for (int i = e.getValue(); i > 0; i--) {
+                action.accept(e.getKey());
+            }
+        }
+    }
+
+    @Override
+    public void forEachWeightBetween(int minWeightInGrammes, int maxWeightInGrammes,
+            IntConsumer action) {
+        for (Map.Entry<Item, Integer> e : between(minWeightInGrammes, maxWeightInGrammes).entrySet()) {
+            int weight = e.getKey().getWeightInGrammes();
+            for (int i = e.getValue(); i > 0; i--) {
+                action.accept(weight);
+            }
+        }
+    }
+
+    /**
+     * Returns a view of the part of the index with the Items whose weight
+     * is between minItemWeightInGrammes and maxItemWeightInGrammes (both
+     * inclusive).
+     *
+     * @param minItemWeightInGrammes the minimum weight in grammes
+     * @param maxItemWeightInGrammes the maximum weight in grammes
+     * @return a view of the matching part of the index
+     */
+    private NavigableMap<Item, Integer> between(int minItemWeightInGrammes,
+            int maxItemWeightInGrammes) {
+        if (minItemWeightInGrammes > maxItemWeightInGrammes) {
+            return new TreeMap<>();
+        }
+        NavigableMap<Item, Integer> head = atMost(maxItemWeightInGrammes);
+        if (minItemWeightInGrammes <= 1 || head.isEmpty()) {
+            return head;
+        }
+        return head.tailMap(lowestWithWeight(minItemWeightInGrammes), true);
+    }
+
+    /**
+     * Returns a view of the part of the index with the Items whose weight
+     * is at most maxItemWeightInGrammes.
+     *
+     * @param maxItemWeightInGrammes the maximum weight in grammes
+     * @return a view of the matching part of the index
+     */
+    private NavigableMap<Item, Integer> atMost(int maxItemWeightInGrammes) {
+        if (maxItemWeightInGrammes == Integer.MAX_VALUE) {
+            return this.index;
+        }
+        if (maxItemWeightInGrammes < 1) {
+            return new TreeMap<>();
+        }
+        return this.index.headMap(lowestWithWeight(maxItemWeightInGrammes + 1), false);
+    }
+
+    /**
+     * Returns a view of the part of the index with the Items whose weight
+     * is greater than maxItemWeightInGrammes.
+     *
+     * @param maxItemWeightInGrammes the maximum weight in grammes
+     * @return a view of the matching part of the index
+     */
+    private NavigableMap<Item, Integer> heavierThan(int maxItemWeightInGrammes) {
+        if (maxItemWeightInGrammes == Integer.MAX_VALUE) {
+            return new TreeMap<>();
+        }
+        if (maxItemWeightInGrammes < 1) {
+            return this.index;
+        }
+        return this.index.tailMap(lowestWithWeight(maxItemWeightInGrammes + 1), true);
+    }
+
+    /**
+     * Returns an Item that is less than every other Item with the given
+     * weight, to be used as a bound for ranges of the index.
+     *
+     * @param weightInGrammes must be positive
+     * @return an Item with the given weight and the least possible name
+     */
+    private static Item lowestWithWeight(int weightInGrammes) {
+        return new Item("", weightInGrammes);
+    }
+}
@@ -0,0 +1,82 @@
+/**
+ * The ways in which a Smartshelf can store its Items. All modes behave the
+ * same as far as the methods of Smartshelf are concerned; they differ in
+ * memory use and in the cost of the individual operations.
+ *
+ * @author sobia
+ */
+public enum StorageMode {
+
+    /**
+     * One Item object per stored Item, kept in a list. This is the default.
+     */
+    LIST {
+        @Override
+        ItemStore newStore(int capacity) {
+            return new ListItemStore(capacity);
+        }
+    },
+
+    /**
+     * Weights in a primitive int column and names as ids into a name
+     * dictionary. Uses several times less memory than LIST for large
+     * Smartshelfs and makes scans by weight cache-friendly; Item objects are
+     * only created when they are needed (e.g., for toString()).
+     */
+    COLUMNAR {
+        @Override
+        ItemStore newStore(int capacity) {
+            return new ColumnarItemStore(capacity);
+        }
+    },
+
+    /**
+     * An index sorted by the natural ordering of Item. Selecting or removing
+     * the Items up to a maximum weight costs O(log n + k) for k affected
+     * Items instead of a scan of all Items, and the greatest Item is always
+     * at hand. Items are iterated from least to greatest.
+     */
+    SORTED {
+        @Override
+        ItemStore newStore(int capacity) {
+            return new SortedItemStore();
+        }
+    },
+
+    /**
+     * Every distinct Item (wrt Item.equals) once, together with the number
+     * of times it has been added. For Smartshelfs with many repeated Items,
+     * memory use and the cost of scans drop by about the number of
+     * repetitions. Equal Items are iterated next to each other.
+     */
+    MULTISET {
+        @Override
+        ItemStore newStore(int capacity) {
+            return new MultisetItemStore();
+        }
+    },
+
+    /**
+     * Weights and name ids in buffers outside the Java heap; only the
+     * distinct names are kept on the heap. Heap usage and garbage
+     * collection time do not grow with the number of Items. A Smartshelf
+     * with this mode should be closed when it is no longer needed, which
+     * frees the memory right away (see OffHeapItemStore); otherwise, the
+     * memory is only freed once the garbage collector gets to it.
+     */
+    OFF_HEAP {
+        @Override
+        ItemStore newStore(int capacity) {
+            return new OffHeapItemStore(new NameDictionary(), capacity);
+        }
+    };
+
+    /**
+     * Creates a new, empty ItemStore for this StorageMode.
+     *
+     * @param capacity the number of Items the new ItemStore should have
+     *  room for, if it allocates room in advance; must not be negative
+     * @return a new, empty ItemStore
+     */
+    abstract ItemStore newStore(int capacity);
+}
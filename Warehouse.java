@@ -0,0 +1,275 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.PriorityQueue;
+
+/**
+ * A Warehouse holds many Smartshelfs and always knows which of them is the
+ * heaviest, unlike Smartshelf.heaviestSmartshelf, which has to look at all
+ * of them on every call. The Warehouse listens to its Smartshelfs (see
+ * SmartshelfListener) and keeps them in an indexed max-heap by total
+ * weight, so every modification of a Smartshelf costs O(log n) extra time
+ * for n Smartshelfs, while heaviestSmartshelf() takes constant time and
+ * heaviestSmartshelfs(k) O(k log k). The total weight and the number of
+ * Items of the whole Warehouse are kept up to date as well.
+ *
+ * A Smartshelf may be in several Warehouses. Like Smartshelf, Warehouse is
+ * not thread-safe; its Smartshelfs must only be modified by the thread
+ * that uses the Warehouse.
+ *
+ * @author sobia
+ */
+public class Warehouse implements SmartshelfListener {
+
+    /** The Smartshelfs in heap order: no Smartshelf is heavier than its parent. */
+    private Smartshelf[] heap = new Smartshelf[16];
+
+    /** weights[i] is the total weight of heap[i] when it was last updated. */
+    private long[] weights = new long[16];
+
+    /** items[i] is the number of Items of heap[i] when it was last updated. */
+    private int[] items = new int[16];
+
+    private int size;
+
+    /** The index of every Smartshelf in heap. */
+    private final Map<Smartshelf, Integer> positions = new IdentityHashMap<>();
+
+    private long totalWeightInGrammes;
+
+    private long numberOfItems;
+
+    /* Modifiers */
+
+    /**
+     * Adds shelf to this Warehouse, unless it is already in it. From now
+     * on, this Warehouse follows the modifications of shelf.
+     *
+     * @param shelf the Smartshelf to be added; must not be null
+     * @return true if shelf was added, false if it was already in this
+     *  Warehouse
+     */
+    public boolean add(Smartshelf shelf) {
+        Objects.requireNonNull(shelf, "shelf must not be null!");
+        if (this.positions.containsKey(shelf)) {
+            return false;
+        }
+        if (this.size == this.heap.length) {
+            int newLength = 2 * this.size;
+            this.heap = Arrays.copyOf(this.heap, newLength);
+            this.weights = Arrays.copyOf(this.weights, newLength);
+            this.items = Arrays.copyOf(this.items, newLength);
+        }
+        int i = this.size++;
+        this.heap[i] = shelf;
+        this.weights[i] = shelf.totalWeightInGrammesAsLong();
+        this.items[i] = shelf.numberOfItems();
+        this.positions.put(shelf, i);
+        this.totalWeightInGrammes += this.weights[i];
+        this.numberOfItems += this.items[i];
+        siftUp(i);
+        shelf.addListener(this);
+        return true;
+    }
+
+    /**
+     * Removes shelf from this Warehouse, if it is in it.
+     *
+     * @param shelf the Smartshelf to be removed
+     * @return true if shelf was removed, false if it was not in this
+     *  Warehouse
+     */
+    public boolean remove(Smartshelf shelf) {
+        Integer position = this.positions.remove(shelf);
+        if (position == null) {
+            return false;
+        }
+        shelf.removeListener(this);
+        int i = position;
+        this.totalWeightInGrammes -= this.weights[i];
+        this.numberOfItems -= this.items[i];
+        int last = --this.size;
+        if (i != last) {
+            // the last entry takes the place of the removed one; it may be
+            // too heavy or too light for that place
+            move(last, i);
+            siftUp(i);
+            siftDown(i);
+        }
+        this.heap[last] = null;
+        return true;
+    }
+
+    /* Notifications from the Smartshelfs */
+
+    @Override
+    public void itemAdded(Smartshelf shelf, Item item) {
+        update(shelf);
+    }
+
+    @Override
+    public void emptied(Smartshelf shelf) {
+        update(shelf);
+    }
+
+    @Override
+    public void keptOnlyItemsWith(Smartshelf shelf, int maxItemWeightInGrammes) {
+        update(shelf);
+    }
+
+    @Override
+    public void removedByName(Smartshelf shelf, String name) {
+        update(shelf);
+    }
+
+    /* Accessors */
+
+    /**
+     * Returns the number of Smartshelfs in this Warehouse.
+     *
+     * @return the number of Smartshelfs in this Warehouse
+     */
+    public int numberOfSmartshelfs() {
+        return this.size;
+    }
+
+    /**
+     * Returns the number of Items on all Smartshelfs in this Warehouse.
+     *
+     * @return the number of Items in this Warehouse
+     */
+    public long numberOfItems() {
+        return this.numberOfItems;
+    }
+
+    /**
+     * Returns the total weight of the Items on all Smartshelfs in this
+     * Warehouse.
+     *
+     * @return the total weight in grammes of the Items in this Warehouse
+     */
+    public long totalWeightInGrammes() {
+        return this.totalWeightInGrammes;
+    }
+
+    /**
+     * Returns a Smartshelf with the highest total weight in this Warehouse,
+     * like Smartshelf.heaviestSmartshelf, but in constant time. If several
+     * Smartshelfs have the same weight, any one of them may be returned.
+     *
+     * @return one of the heaviest Smartshelfs; null if this Warehouse is
+     *  empty
+     */
+    public Smartshelf heaviestSmartshelf() {
+        return this.size == 0 ? null : this.heap[0];
+    }
+
+    /**
+     * Returns the k heaviest Smartshelfs in this Warehouse, heaviest first,
+     * or all of them if there are fewer than k. Takes O(k log k) time,
+     * independent of the number of Smartshelfs.
+     *
+     * @param k the number of Smartshelfs asked for; must not be negative
+     * @return a new list with the k heaviest Smartshelfs, heaviest first
+     * @throws IllegalArgumentException if k is negative
+     */
+    public List<Smartshelf> heaviestSmartshelfs(int k) {
+        if (k < 0) {
+            throw new IllegalArgumentException("Expected k >= 0, found " + k);
+        }
+        int n = Math.min(k, this.size);
+        List<Smartshelf> result = new ArrayList<>(n);
+        if (n == 0) {
+            return result;
+        }
+        // the next heaviest Smartshelf is always a child of one already
+        // taken, so only the frontier of taken heap nodes is searched
+        PriorityQueue<Integer> frontier = new PriorityQueue<>(
+            (a, b) -> Long.compare(this.weights[b], this.weights[a]));
+        frontier.add(0);
+        while (result.size() < n) {
+            int i = frontier.poll();
+            result.add(this.heap[i]);
+            for (int child = 2 * i + 1; child <= 2 * i + 2 && child < this.size; child++) {
+                frontier.add(child);
+            }
+        }
+        return result;
+    }
+
+    /* Heap maintenance */
+
+    /**
+     * Updates the weight of shelf after it has been modified and restores
+     * the heap order.
+     */
+    private void update(Smartshelf shelf) {
+        Integer position = this.positions.get(shelf);
+        if (position == null) {
+            return;
+        }
+        int i = position;
+        long oldWeight = this.weights[i];
+        long newWeight = shelf.totalWeightInGrammesAsLong();
+        int newItems = shelf.numberOfItems();
+        this.totalWeightInGrammes += newWeight - oldWeight;
+        this.numberOfItems += newItems - this.items[i];
+        this.weights[i] = newWeight;
+        this.items[i] = newItems;
+        if (newWeight > oldWeight) {
+            siftUp(i);
+        } else if (newWeight < oldWeight) {
+            siftDown(i);
+        }
+    }
+
+    private void siftUp(int i) {
+        while (i > 0) {
+            int parent = (i - 1) / 2;
+            if (this.weights[parent] >= this.weights[i]) {
+                return;
+            }
+            swap(i, parent);
+            i = parent;
+        }
+    }
+
+    private void siftDown(int i) {
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= this.size) {
+                return;
+            }
+            if (child + 1 < this.size && this.weights[child + 1] > this.weights[child]) {
+                child++;
+            }
+            if (this.weights[i] >= this.weights[child]) {
+                return;
+            }
+            swap(i, child);
+            i = child;
+        }
+    }
+
+    private void swap(int i, int j) {
+        Smartshelf shelf = this.heap[i];
+        long weight = this.weights[i];
+        int itemCount = this.items[i];
+        move(j, i);
+        this.heap[j] = shelf;
+        this.weights[j] = weight;
+        this.items[j] = itemCount;
+        this.positions.put(shelf, j);
+    }
+
+    /** Moves the entry at index from to index to, overwriting it. */
+    private void move(int from, int to) {
+        this.heap[to] = this.heap[from];
+        this.weights[to] = this.weights[from];
+        this.items[to] = this.items[from];
+        this.positions.put(this.heap[to], to);
+    }
+}
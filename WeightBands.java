@@ -0,0 +1,93 @@
+/**
+ * The number of Items and their total weight per weight band of a
+ * Smartshelf, as computed by Smartshelf.weightBands. For thresholds
+ * t[0] < t[1] < ... < t[k-1], there are k + 1 bands: band 0 has the Items
+ * of at most t[0] grammes, band i those heavier than t[i-1] and at most
+ * t[i] grammes, and band k those heavier than t[k-1].
+ *
+ * @author sobia
+ */
+public final class WeightBands {
+
+    private final int[] thresholds;
+
+    private final int[] counts;
+
+    private final long[] totals;
+
+    /**
+     * Constructs a new WeightBands. Use Smartshelf.weightBands instead.
+     *
+     * @param thresholds the thresholds; not copied
+     * @param counts the number of Items per band; not copied
+     * @param totals the total weight per band; not copied
+     */
+    WeightBands(int[] thresholds, int[] counts, long[] totals) {
+        this.thresholds = thresholds;
+        this.counts = counts;
+        this.totals = totals;
+    }
+
+    /**
+     * Returns the number of bands, i.e., the number of thresholds plus one.
+     *
+     * @return the number of bands
+     */
+    public int numberOfBands() {
+        return this.counts.length;
+    }
+
+    /**
+     * Returns the maximum weight of the Items in a band.
+     *
+     * @param band the index of the band
+     * @return the threshold of the band; Integer.MAX_VALUE for the last band
+     */
+    public int maxWeightInGrammes(int band) {
+        return band == this.thresholds.length ? Integer.MAX_VALUE : this.thresholds[band];
+    }
+
+    /**
+     * Returns the number of Items in a band.
+     *
+     * @param band the index of the band
+     * @return the number of Items in the band
+     */
+    public int numberOfItems(int band) {
+        return this.counts[band];
+    }
+
+    /**
+     * Returns the total weight of the Items in a band.
+     *
+     * @param band the index of the band
+     * @return the total weight in grammes of the Items in the band
+     */
+    public long totalWeightInGrammes(int band) {
+        return this.totals[band];
+    }
+
+    /**
+     * Returns a string representation of the bands, e.g.,
+     * "[<=50g: 2 Items, 70g; <=120g: 1 Items, 120g; >120g: 0 Items, 0g]".
+     *
+     * @return a string representation of the bands
+     */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("[");
+        for (int b = 0; b < this.counts.length; b++) {
+            if (b > 0) {
+                sb.append("; ");
+            }
+            if (b < this.thresholds.length) {
+                sb.append("<=").append(this.thresholds[b]);
+            } else {
+                sb.append('>').append(this.thresholds.length == 0 ? 0 : this.thresholds[b - 1]);
+            }
+            sb.append("g: ").append(this.counts[b]).append(" Items, ")
+                .append(this.totals[b]).append('g');
+        }
+        return sb.append(']').toString();
+    }
+}
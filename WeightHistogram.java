@@ -0,0 +1,294 @@
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A WeightHistogram counts the Items of a Smartshelf by weight, so that
+ * the number and the total weight of the Items up to a given weight, and
+ * the weight of a given rank, can be found without looking at the Items.
+ *
+ * Weights below EXACT_LIMIT are counted exactly in two Fenwick trees (one
+ * for the numbers of Items, one for their weights), which take O(log w)
+ * time per update and query for a greatest weight w and O(w) memory; the
+ * trees grow with the greatest weight seen. The rare heavier weights are
+ * counted in a sorted map instead, so queries about them take time linear
+ * in the number of distinct such weights.
+ *
+ * @author sobia
+ */
+class WeightHistogram {
+
+    /** Weights from this on are not counted in the trees. */
+    static final int EXACT_LIMIT = 1 << 20;
+
+    /**
+     * Fenwick trees over the weights 1 to size, where size is a power of
+     * two: counts[i] (totals[i]) is the number (total weight) of the Items
+     * whose weight is greater than i - (i & -i) and at most i.
+     */
+    private long[] counts = new long[1 + 16];
+
+    private long[] totals = new long[1 + 16];
+
+    /** The numbers of Items of at least EXACT_LIMIT grammes, by weight. */
+    private final TreeMap<Integer, long[]> heavy = new TreeMap<>();
+
+    /**
+     * Counts an added Item.
+     *
+     * @param weight the weight of the Item; must be positive
+     */
+    void add(int weight) {
+        update(weight, 1);
+    }
+
+    /**
+     * Uncounts removed Items of the same weight.
+     *
+     * @param weight the weight of the Items; must have been counted
+     * @param n the number of removed Items; at most their count
+     */
+    void remove(int weight, int n) {
+        update(weight, -n);
+    }
+
+    /**
+     * Forgets all counted Items.
+     */
+    void clear() {
+        Arrays.fill(this.counts, 0);
+        Arrays.fill(this.totals, 0);
+        this.heavy.clear();
+    }
+
+    /**
+     * Returns the number of counted Items of at most maxWeight grammes.
+     *
+     * @param maxWeight the maximum weight
+     * @return the number of Items of at most maxWeight grammes
+     */
+    long countAtMost(int maxWeight) {
+        return sumAtMost(this.counts, maxWeight, false);
+    }
+
+    /**
+     * Returns the total weight of the counted Items of at most maxWeight
+     * grammes.
+     *
+     * @param maxWeight the maximum weight
+     * @return the total weight of the Items of at most maxWeight grammes
+     */
+    long totalAtMost(int maxWeight) {
+        return sumAtMost(this.totals, maxWeight, true);
+    }
+
+    /**
+     * Returns the least weight w such that at least rank counted Items
+     * weigh at most w grammes, i.e., the weight of the Item at position
+     * rank (counted from 1) if the Items were sorted by weight.
+     *
+     * @param rank between 1 and the number of counted Items
+     * @return the weight of the Item of the given rank
+     */
+    int weightOfRank(long rank) {
+        int size = size();
+        if (rank <= this.counts[size]) {
+            // binary lifting: the greatest position with fewer than rank
+            // Items up to it, plus one
+            int position = 0;
+            long remaining = rank;
+            for (int step = size; step > 0; step >>= 1) {
+                int next = position + step;
+                if (next <= size && this.counts[next] < remaining) {
+                    position = next;
+                    remaining -= this.counts[next];
+                }
+            }
+            return position + 1;
+        }
+        long seen = this.counts[size];
+        for (Map.Entry<Integer, long[]> e : this.heavy.entrySet()) {
+            seen += e.getValue()[0];
+            if (seen >= rank) {
+                return e.getKey();
+            }
+        }
+        throw new IllegalArgumentException("Expected rank <= " + seen + ", found " + rank);
+    }
+
+    /**
+     * Sorts items by the natural ordering of Item. If the weights span a
+     * range of at most a few times the number of Items, this is a radix
+     * sort with two stable counting sorts, first by the rank of the name
+     * among the distinct names and then by weight, so only the distinct
+     * names are compared with each other. Otherwise, the Items are sorted
+     * by comparisons.
+     *
+     * @param items the Items to be sorted; must not contain null
+     */
+    static void sort(Item[] items) {
+        int n = items.length;
+        if (n < 2) {
+            return;
+        }
+        int min = Integer.MAX_VALUE;
+        int max = Integer.MIN_VALUE;
+        for (Item it : items) {
+            min = Math.min(min, it.getWeightInGrammes());
+            max = Math.max(max, it.getWeightInGrammes());
+        }
+        long range = (long) max - min + 1;
+        if (range > 4L * n + 1024) {
+            Arrays.sort(items);
+            return;
+        }
+        Item[] byName = sortedByName(items);
+        int[] starts = new int[(int) range + 1];
+        for (Item it : byName) {
+            starts[it.getWeightInGrammes() - min + 1]++;
+        }
+        for (int i = 1; i < starts.length; i++) {
+            starts[i] += starts[i - 1];
+        }
+        placeByWeight(byName, starts, min, items);
+    }
+
+    /**
+     * Sorts items, which must be exactly the counted Items, like
+     * sort(Item[]), but takes the position of every weight from the counts
+     * of this WeightHistogram instead of counting the weights again. Falls
+     * back to sort(Item[]) if the trees are large compared to the number
+     * of Items or some Items are too heavy for the trees.
+     *
+     * @param items the counted Items; must not contain null
+     */
+    void sortCounted(Item[] items) {
+        int size = size();
+        if (items.length < 2 || !this.heavy.isEmpty() || size > 4L * items.length + 1024) {
+            sort(items);
+            return;
+        }
+        // building a Fenwick tree from the counts by weight in linear time
+        // adds tree[i] to tree[i + (i & -i)] for increasing i; undo that
+        long[] byWeight = this.counts.clone();
+        for (int i = size; i > 0; i--) {
+            int parent = i + (i & -i);
+            if (parent <= size) {
+                byWeight[parent] -= byWeight[i];
+            }
+        }
+        // starts[w - 1] is the number of Items lighter than w grammes
+        int[] starts = new int[size + 1];
+        for (int w = 1; w < size; w++) {
+            starts[w] = starts[w - 1] + (int) byWeight[w];
+        }
+        placeByWeight(sortedByName(items), starts, 1, items);
+    }
+
+    /**
+     * Returns a new array with items stably sorted by name with a counting
+     * sort over the ranks of the distinct names.
+     *
+     * @param items must not contain null
+     * @return a new array with items sorted by name
+     */
+    private static Item[] sortedByName(Item[] items) {
+        int n = items.length;
+        // number the distinct names in sorted order
+        Map<String, int[]> ranks = new HashMap<>();
+        for (Item it : items) {
+            ranks.computeIfAbsent(it.getName(), name -> new int[1]);
+        }
+        String[] names = ranks.keySet().toArray(new String[0]);
+        Arrays.sort(names);
+        for (int i = 0; i < names.length; i++) {
+            ranks.get(names[i])[0] = i;
+        }
+        int[] nameRanks = new int[n];
+        for (int i = 0; i < n; i++) {
+            nameRanks[i] = ranks.get(items[i].getName())[0];
+        }
+        Item[] byName = new Item[n];
+        int[] starts = new int[names.length + 1];
+        for (int r : nameRanks) {
+            starts[r + 1]++;
+        }
+        for (int i = 1; i < starts.length; i++) {
+            starts[i] += starts[i - 1];
+        }
+        for (int i = 0; i < n; i++) {
+            byName[starts[nameRanks[i]]++] = items[i];
+        }
+        return byName;
+    }
+
+    /**
+     * Puts the Items of byName into items by weight, keeping the order of
+     * Items of the same weight, so Items sorted by name end up sorted.
+     *
+     * @param byName the Items in the order to keep within a weight
+     * @param starts starts[w - min] is the first position for weight w;
+     *  advanced as Items are placed
+     * @param min the least weight covered by starts
+     * @param items receives the sorted Items
+     */
+    private static void placeByWeight(Item[] byName, int[] starts, int min, Item[] items) {
+        for (Item it : byName) {
+            items[starts[it.getWeightInGrammes() - min]++] = it;
+        }
+    }
+
+    private int size() {
+        return this.counts.length - 1;
+    }
+
+    private void update(int weight, int delta) {
+        if (weight >= EXACT_LIMIT) {
+            long[] count = this.heavy.computeIfAbsent(weight, w -> new long[1]);
+            count[0] += delta;
+            if (count[0] == 0) {
+                this.heavy.remove(weight);
+            }
+            return;
+        }
+        while (weight > size()) {
+            grow();
+        }
+        for (int i = weight; i < this.counts.length; i += i & -i) {
+            this.counts[i] += delta;
+            this.totals[i] += (long) delta * weight;
+        }
+    }
+
+    /**
+     * Doubles the size of the trees. The old entries stay as they are, the
+     * new ones cover weights without Items, except for the new last one,
+     * which covers all weights.
+     */
+    private void grow() {
+        int size = size();
+        this.counts = Arrays.copyOf(this.counts, 2 * size + 1);
+        this.totals = Arrays.copyOf(this.totals, 2 * size + 1);
+        this.counts[2 * size] = this.counts[size];
+        this.totals[2 * size] = this.totals[size];
+    }
+
+    private long sumAtMost(long[] tree, int maxWeight, boolean weighted) {
+        if (maxWeight <= 0) {
+            return 0;
+        }
+        int size = size();
+        int i = Math.min(maxWeight, size);
+        long sum = 0;
+        for (; i > 0; i -= i & -i) {
+            sum += tree[i];
+        }
+        if (maxWeight >= EXACT_LIMIT) {
+            for (Map.Entry<Integer, long[]> e : this.heavy.headMap(maxWeight, true).entrySet()) {
+                sum += weighted ? e.getKey() * e.getValue()[0] : e.getValue()[0];
+            }
+        }
+        return sum;
+    }
+}
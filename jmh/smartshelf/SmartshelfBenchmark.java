@@ -0,0 +1,198 @@
+package smartshelf;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * JMH benchmarks for Smartshelf: add, addAll, keepOnlyItemsWith,
+ * makeNewSmartshelfWith, totalWeightInGrammes, greatestItem, toString and
+ * heaviestSmartshelf. By default, they run for every storage mode and for
+ * shelves of 1000 and 10^6 Items, with uniformly distributed weights and
+ * half of the Items duplicates, which takes well under an hour. Every
+ * combination of parameters runs in JVMs of its own, so that the numbers
+ * of one storage mode do not depend on the code the JIT compiler has seen
+ * for the others.
+ *
+ * Run with "gradle jmh"; JMH options are passed with --args, e.g.,
+ * gradle jmh --args='-p mode=COLUMNAR -p size=1000000 -rf csv add'.
+ * The other parameters are widened the same way, e.g.,
+ * -p distribution=UNIFORM,NARROW,SKEWED -p duplicates=0.0,0.5,0.99
+ * -p size=10,1000,100000,10000000; every value multiplies the running
+ * time, and all of them together take a whole night.
+ *
+ * add, addAll and keepOnlyItemsWith modify their Smartshelf, so they are
+ * measured as single calls on a Smartshelf made before every iteration,
+ * rather than with JMH's per-call setup, whose bookkeeping would distort
+ * calls that take less than a millisecond. Their numbers are therefore
+ * times per call, not averages over many calls in one iteration.
+ *
+ * JMH does not support benchmarks in the default package, and classes in
+ * the default package cannot be used from other packages, so the build
+ * compiles a copy of the Smartshelf sources in the package smartshelf for
+ * the benchmarks (see build.gradle).
+ *
+ * @author sobia
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(value = 2, jvmArgsAppend = "-Xmx8g")
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class SmartshelfBenchmark {
+
+    /**
+     * The Items and the Smartshelfs that the benchmarks do not modify,
+     * made once per combination of parameters.
+     */
+    @State(Scope.Benchmark)
+    public static class Workload {
+
+        @Param
+        public StorageMode mode;
+
+        @Param({ "UNIFORM" })
+        public SmartshelfWorkload.Distribution distribution;
+
+        @Param({ "0.5" })
+        public double duplicates;
+
+        @Param({ "1000", "1000000" })
+        public int size;
+
+        Item[] items;
+
+        int medianWeight;
+
+        /** A Smartshelf with the Items. */
+        Smartshelf shelf;
+
+        /** The Items spread over many Smartshelfs, for heaviestSmartshelf. */
+        Smartshelf[] shelves;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            this.items = SmartshelfWorkload.makeItems(this.size, this.distribution, this.duplicates, this.size);
+            this.medianWeight = SmartshelfWorkload.medianWeight(this.items);
+            this.shelf = SmartshelfWorkload.makeShelf(this.items, this.mode);
+            this.shelves = SmartshelfWorkload.makeShelves(this.items, this.mode);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            // releases the memory of OFF_HEAP Smartshelfs
+            this.shelf.close();
+            for (Smartshelf s : this.shelves) {
+                s.close();
+            }
+        }
+    }
+
+    /**
+     * An empty Smartshelf for every iteration, i.e., every call, of a
+     * benchmark that adds Items.
+     */
+    @State(Scope.Thread)
+    public static class EmptyShelf {
+
+        Smartshelf shelf;
+
+        @Setup(Level.Iteration)
+        public void setUp(Workload workload) {
+            this.shelf = new Smartshelf(workload.mode);
+        }
+
+        @TearDown(Level.Iteration)
+        public void tearDown() {
+            this.shelf.close();
+        }
+    }
+
+    /**
+     * A Smartshelf with the Items for every iteration, i.e., every call, of
+     * a benchmark that removes Items.
+     */
+    @State(Scope.Thread)
+    public static class FullShelf {
+
+        Smartshelf shelf;
+
+        @Setup(Level.Iteration)
+        public void setUp(Workload workload) {
+            this.shelf = SmartshelfWorkload.makeShelf(workload.items, workload.mode);
+        }
+
+        @TearDown(Level.Iteration)
+        public void tearDown() {
+            this.shelf.close();
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @Warmup(iterations = 20)
+    @Measurement(iterations = 20)
+    public int add(Workload workload, EmptyShelf empty) {
+        for (Item it : workload.items) {
+            empty.shelf.add(it);
+        }
+        return empty.shelf.numberOfItems();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @Warmup(iterations = 20)
+    @Measurement(iterations = 20)
+    public int addAll(Workload workload, EmptyShelf empty) {
+        empty.shelf.addAll(workload.items);
+        return empty.shelf.numberOfItems();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @Warmup(iterations = 20)
+    @Measurement(iterations = 20)
+    public int keepOnlyItemsWith(Workload workload, FullShelf full) {
+        full.shelf.keepOnlyItemsWith(workload.medianWeight);
+        return full.shelf.numberOfItems();
+    }
+
+    @Benchmark
+    public int makeNewSmartshelfWith(Workload workload) {
+        try (Smartshelf result = workload.shelf.makeNewSmartshelfWith(workload.medianWeight)) {
+            return result.numberOfItems();
+        }
+    }
+
+    @Benchmark
+    public long totalWeightInGrammes(Workload workload) {
+        return workload.shelf.totalWeightInGrammesAsLong();
+    }
+
+    @Benchmark
+    public Item greatestItem(Workload workload) {
+        return workload.shelf.greatestItem();
+    }
+
+    @Benchmark
+    public String toString(Workload workload) {
+        return workload.shelf.toString();
+    }
+
+    @Benchmark
+    public Smartshelf heaviestSmartshelf(Workload workload) {
+        return Smartshelf.heaviestSmartshelf(workload.shelves);
+    }
+}